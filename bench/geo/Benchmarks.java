@@ -0,0 +1,200 @@
+package geo;
+
+import java.io.File;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Micro-benchmarks of the geometry hot paths, run on the bundled instances and on synthetic polygons of increasing
+ * size. Each benchmark is warmed up, then run for a number of timed iterations; the report gives the throughput
+ * (mean and standard deviation over the iterations) and the number of bytes allocated per operation, as measured by
+ * the JVM for the benchmarking thread.
+ *
+ * Usage: java -cp bench:src:lib/... geo.Benchmarks [instance directory] [name filter]
+ */
+public class Benchmarks {
+
+    private static final int WARMUP_ITERATIONS = 3;
+    private static final int ITERATIONS = 5;
+    private static final long ITERATION_NANOS = 500_000_000L;
+
+    private static final com.sun.management.ThreadMXBean THREADS =
+            (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+    private static int sink; // results are folded in here so that the JIT cannot drop the work
+
+    interface Operation {
+        /**
+         * Run the i-th operation of the benchmark (the index lets benchmarks cycle through their inputs)
+         */
+        Object run(int i) throws Exception;
+    }
+
+    public static void main(String[] args) throws Exception {
+        String directory = args.length > 0 ? args[0] : "instances";
+        String filter = args.length > 1 ? args[1] : "";
+
+        Map<String, PolygonWithHoles> inputs = new LinkedHashMap<>();
+        File[] files = new File(directory).listFiles((dir, name) -> name.endsWith(".json"));
+        if (files != null) {
+            Arrays.sort(files);
+            for (File file : files) {
+                inputs.put(file.getName().replace(".instance.json", ""), PolygonWithHoles.parseInstanceFile(file.getPath()));
+            }
+        }
+        for (int[] size : new int[][]{{250, 4}, {1000, 8}, {4000, 16}}) {
+            inputs.put("synthetic-" + size[0] + "x" + size[1] * size[1], synthetic(size[0], size[1], false));
+            inputs.put("aligned-" + size[0] + "x" + size[1] * size[1], synthetic(size[0], size[1], true));
+        }
+
+        THREADS.setThreadAllocatedMemoryEnabled(true);
+        System.out.printf(Locale.ROOT, "%-40s %-24s %16s %12s %14s%n", "benchmark", "input", "ops/s", "error", "bytes/op");
+        for (Map.Entry<String, PolygonWithHoles> input : inputs.entrySet()) {
+            benchmarkPolygon(input.getKey(), input.getValue(), filter);
+        }
+        if (sink == 42) {
+            System.out.println();
+        }
+    }
+
+    private static void benchmarkPolygon(String name, PolygonWithHoles polygon, String filter) throws Exception {
+        SimplePolygon simple = polygon.toSimple();
+        List<Triangle> triangles = simple.triangulate(Integer.MAX_VALUE);
+        SimplePolygon outer = new SimplePolygon(polygon.outerBoundary);
+        Random random = new Random(0);
+
+        double minX = Double.POSITIVE_INFINITY, minY = Double.POSITIVE_INFINITY;
+        double maxX = Double.NEGATIVE_INFINITY, maxY = Double.NEGATIVE_INFINITY;
+        for (Point point : polygon.outerBoundary) {
+            minX = Math.min(minX, point.x);
+            minY = Math.min(minY, point.y);
+            maxX = Math.max(maxX, point.x);
+            maxY = Math.max(maxY, point.y);
+        }
+        Point[] points = new Point[1024];
+        for (int i = 0; i < points.length; i++) {
+            points[i] = new Point(minX + random.nextDouble() * (maxX - minX), minY + random.nextDouble() * (maxY - minY));
+        }
+        List<Edge> allEdges = polygon.getAllEdges();
+        Edge[][] edgePairs = new Edge[1024][];
+        for (int i = 0; i < edgePairs.length; i++) {
+            edgePairs[i] = new Edge[]{allEdges.get(random.nextInt(allEdges.size())), allEdges.get(random.nextInt(allEdges.size()))};
+        }
+
+        // pairs of triangles sharing a vertex, as the merge loop would pick them, and their hulls
+        Map<Point, List<Triangle>> trianglesAtVertex = new HashMap<>();
+        for (Triangle triangle : triangles) {
+            for (Point vertex : triangle.outerBoundary) {
+                trianglesAtVertex.computeIfAbsent(vertex, v -> new ArrayList<>()).add(triangle);
+            }
+        }
+        List<ConvexPolygon[]> mergePairs = new ArrayList<>();
+        for (int i = 0; i < 1024 && !triangles.isEmpty(); i++) {
+            Triangle first = triangles.get(random.nextInt(triangles.size()));
+            List<Triangle> adjacent = trianglesAtVertex.get(first.outerBoundary[random.nextInt(3)]);
+            mergePairs.add(new ConvexPolygon[]{first, adjacent.get(random.nextInt(adjacent.size()))});
+        }
+        List<ConvexPolygon> hulls = new ArrayList<>();
+        List<ConvexPolygon> contained = new ArrayList<>(); // the hulls that the merge loop would keep
+        for (ConvexPolygon[] pair : mergePairs) {
+            hulls.add(pair[0].mergeWith(pair[1]));
+            if (hulls.get(hulls.size() - 1).mergeIsContainedWithin(polygon)) {
+                contained.add(hulls.get(hulls.size() - 1));
+            }
+        }
+
+        run("Point.isInside", name, filter, i -> points[i % points.length].isInside(outer));
+        run("Edge.intersect", name, filter, i -> edgePairs[i % edgePairs.length][0].intersect(edgePairs[i % edgePairs.length][1], false));
+        if (!mergePairs.isEmpty()) {
+            run("ConvexPolygon.mergeWith", name, filter, i -> mergePairs.get(i % mergePairs.size())[0].mergeWith(mergePairs.get(i % mergePairs.size())[1]));
+            run("ConvexPolygon.isContainedWithin", name, filter, i -> hulls.get(i % hulls.size()).isContainedWithin(polygon));
+            run("ConvexPolygon.mergeIsContainedWithin", name, filter, i -> hulls.get(i % hulls.size()).mergeIsContainedWithin(polygon));
+        }
+        if (!contained.isEmpty()) {
+            run("ConvexPolygon.inflateWithin", name, filter, i -> contained.get(i % contained.size()).inflateWithin(polygon));
+        }
+        run("SimplePolygon.triangulate", name, filter, i -> simple.triangulate(Integer.MAX_VALUE));
+        run("PolygonWithHoles.toSimple", name, filter, i -> polygon.toSimple());
+    }
+
+    private static void run(String benchmark, String input, String filter, Operation operation) throws Exception {
+        if (!(benchmark + " " + input).contains(filter)) {
+            return;
+        }
+        long thread = Thread.currentThread().getId();
+        for (int iteration = 0; iteration < WARMUP_ITERATIONS; iteration++) {
+            iterate(operation);
+        }
+        double[] throughput = new double[ITERATIONS];
+        long operations = 0;
+        long allocated = THREADS.getThreadAllocatedBytes(thread);
+        for (int iteration = 0; iteration < ITERATIONS; iteration++) {
+            long start = System.nanoTime();
+            long count = iterate(operation);
+            throughput[iteration] = count * 1e9 / (System.nanoTime() - start);
+            operations += count;
+        }
+        allocated = THREADS.getThreadAllocatedBytes(thread) - allocated;
+
+        double mean = 0;
+        for (double value : throughput) {
+            mean += value / ITERATIONS;
+        }
+        double variance = 0;
+        for (double value : throughput) {
+            variance += (value - mean) * (value - mean) / (ITERATIONS - 1);
+        }
+        System.out.printf(Locale.ROOT, "%-40s %-24s %16.1f %12.1f %14.1f%n",
+                benchmark, input, mean, Math.sqrt(variance), (double) allocated / operations);
+    }
+
+    /**
+     * Run the operation for about one iteration's worth of time (and at least once) and return how many times it ran
+     */
+    private static long iterate(Operation operation) throws Exception {
+        long deadline = System.nanoTime() + ITERATION_NANOS;
+        long count = 0;
+        do {
+            Object result = operation.run((int) count);
+            sink += result == null ? 0 : System.identityHashCode(result) & 1;
+            count++;
+        } while (System.nanoTime() < deadline);
+        return count;
+    }
+
+    /**
+     * A polygon with a sawtooth top of the given number of teeth and a grid of holes x holes square holes, either
+     * @param aligned in rows and columns (whose bridges run along the edges of other holes, the degenerate case of
+     * the ear clipping) or staggered. The coordinates are small integers, so that the floating point predicates are
+     * exact on it.
+     */
+    static PolygonWithHoles synthetic(int teeth, int holes, boolean aligned) {
+        int width = 10 * teeth, height = 5 * teeth;
+        List<Point> outer = new ArrayList<>();
+        outer.add(new Point(0, 0));
+        outer.add(new Point(width, 0));
+        for (int i = teeth; i >= 0; i--) {
+            outer.add(new Point(10 * i, height + (i % 2) * 5));
+        }
+        Point[][] squares = new Point[holes * holes][];
+        int cellWidth = width / holes, cellHeight = height / holes;
+        int side = Math.max(1, Math.min(cellWidth, cellHeight) / 3);
+        for (int i = 0; i < holes; i++) {
+            for (int j = 0; j < holes; j++) {
+                int x = i * cellWidth + (cellWidth - side) / 2 + (aligned ? 0 : j);
+                int y = j * cellHeight + (cellHeight - side) / 2 + (aligned ? 0 : i);
+                // clockwise, as holes are in the instances
+                squares[i * holes + j] = new Point[]{new Point(x, y), new Point(x, y + side),
+                        new Point(x + side, y + side), new Point(x + side, y)};
+            }
+        }
+        return new PolygonWithHoles(outer.toArray(new Point[0]), squares);
+    }
+}
@@ -0,0 +1,170 @@
+package geo;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Batch mode: solve every instance matched by -batch in a single run, so that JVM startup and JIT warm-up are paid
+ * once rather than once per instance. Instances are solved -jobs at a time, each exactly as with -file, and reported
+ * as they finish, on the console and in the -summary file. An instance that fails (cannot be read, breaks the
+ * triangulation, runs out of memory, ...) is reported as such and does not stop the others.
+ */
+class Batch {
+
+    private static final String DIRECTORY_PATTERN = "*.instance.json{,.gz}";
+
+    /**
+     * Outcome of solving a single instance: either the size of the cover found, or the error that stopped it
+     */
+    private static class Outcome {
+        final String file;
+        final int pieces;
+        final double seconds;
+        final Throwable error;
+
+        Outcome(String file, int pieces, double seconds, Throwable error) {
+            this.file = file;
+            this.pieces = pieces;
+            this.seconds = seconds;
+            this.error = error;
+        }
+    }
+
+    /**
+     * Solve all the instances of the batch and return whether all of them succeeded
+     */
+    static boolean run(CLO clo) {
+        List<Path> files;
+        try {
+            files = instanceFiles(clo.batch);
+        } catch (IOException e) {
+            System.err.println("Could not list the instance files of " + clo.batch + ": " + e.getMessage());
+            return false;
+        }
+        if (files.isEmpty()) {
+            System.err.println("No instance files match " + clo.batch);
+            return false;
+        }
+        System.out.println("Solving " + files.size() + " instances, " + clo.jobs + " at a time...");
+
+        int failed = 0;
+        long start = System.nanoTime();
+        ExecutorService pool = Executors.newFixedThreadPool(clo.jobs);
+        try (PrintWriter summary = new PrintWriter(Files.newBufferedWriter(Paths.get(clo.summary), StandardCharsets.UTF_8))) {
+            summary.println("instance,pieces,seconds,error");
+            summary.flush();
+            CompletionService<Outcome> outcomes = new ExecutorCompletionService<>(pool);
+            for (Path file : files) {
+                outcomes.submit(() -> solve(clo.forFile(file.toString())));
+            }
+            for (int done = 1; done <= files.size(); done++) {
+                Outcome outcome = outcomes.take().get();
+                if (outcome.error == null) {
+                    System.out.printf(Locale.ROOT, "[%d/%d] %s: cover with %d pieces in %.2f s%n",
+                            done, files.size(), outcome.file, outcome.pieces, outcome.seconds);
+                } else {
+                    failed++;
+                    System.err.printf(Locale.ROOT, "[%d/%d] %s: failed after %.2f s: %s%n",
+                            done, files.size(), outcome.file, outcome.seconds, describe(outcome.error));
+                }
+                summary.printf(Locale.ROOT, "%s,%s,%.3f,%s%n", csv(outcome.file),
+                        outcome.error == null ? String.valueOf(outcome.pieces) : "",
+                        outcome.seconds, outcome.error == null ? "" : csv(describe(outcome.error)));
+                summary.flush(); // so that the summary of a batch that gets killed is complete up to that point
+            }
+        } catch (IOException e) {
+            System.err.println("Could not write the summary to " + clo.summary + ": " + e.getMessage());
+            return false;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while solving the batch", e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException(e.getCause());
+        } finally {
+            pool.shutdownNow();
+        }
+        System.out.printf(Locale.ROOT, "Solved %d out of %d instances in %.2f s, summary saved to %s%n",
+                files.size() - failed, files.size(), (System.nanoTime() - start) / 1e9, clo.summary);
+        return failed == 0;
+    }
+
+    private static Outcome solve(CLO clo) {
+        long start = System.nanoTime();
+        try {
+            List<ConvexPolygon> cover = Main.solve(clo);
+            return new Outcome(clo.file, cover.size(), (System.nanoTime() - start) / 1e9, null);
+        } catch (Throwable e) {
+            // errors too (out of memory, stack overflow on a large instance): they only stop that instance
+            return new Outcome(clo.file, 0, (System.nanoTime() - start) / 1e9, e);
+        }
+    }
+
+    /**
+     * The instance files of the batch, in lexicographic order: the *.instance.json(.gz) files of the directory if
+     * @param batch is one, otherwise the files matching it as a glob (relative to the working directory unless it
+     * is absolute). The glob is only matched below its longest prefix free of wildcards.
+     */
+    static List<Path> instanceFiles(String batch) throws IOException {
+        Path directory = Paths.get(batch);
+        if (Files.isDirectory(directory)) {
+            PathMatcher matcher = directory.getFileSystem().getPathMatcher("glob:" + DIRECTORY_PATTERN);
+            try (Stream<Path> entries = Files.list(directory)) {
+                return entries.filter(path -> Files.isRegularFile(path) && matcher.matches(path.getFileName()))
+                        .sorted().collect(Collectors.toList());
+            }
+        }
+
+        // split the glob into the directory to search and the part with wildcards
+        String[] segments = batch.split("/", -1);
+        List<String> base = new ArrayList<>();
+        int first = 0;
+        while (first < segments.length - 1 && !hasWildcard(segments[first])) {
+            base.add(segments[first++]);
+        }
+        String prefix = String.join("/", base);
+        Path root = Paths.get(prefix.isEmpty() && batch.startsWith("/") ? "/" : prefix);
+        int depth = batch.contains("**") ? Integer.MAX_VALUE : segments.length - first;
+        if (!Files.isDirectory(root)) {
+            return new ArrayList<>();
+        }
+        PathMatcher matcher = root.getFileSystem().getPathMatcher("glob:" + batch);
+        try (Stream<Path> entries = Files.walk(root, depth)) {
+            return entries.filter(path -> Files.isRegularFile(path) && matcher.matches(path))
+                    .sorted().collect(Collectors.toList());
+        }
+    }
+
+    private static boolean hasWildcard(String segment) {
+        return segment.indexOf('*') >= 0 || segment.indexOf('?') >= 0 || segment.indexOf('[') >= 0 ||
+               segment.indexOf('{') >= 0;
+    }
+
+    private static String describe(Throwable e) {
+        return e.getMessage() == null ? e.getClass().getSimpleName() : e.getClass().getSimpleName() + ": " + e.getMessage();
+    }
+
+    /**
+     * Quote a field of the summary if needed
+     */
+    private static String csv(String field) {
+        if (field.contains(",") || field.contains("\"") || field.contains("\n")) {
+            return "\"" + field.replace("\"", "\"\"") + "\"";
+        }
+        return field;
+    }
+}
@@ -4,34 +4,78 @@ import org.apache.commons.cli.*;
 
 public class CLO { // command line options
 
-    // Required Options:
+    // Required Options (one of the two):
     public final String file; // instance file
+    public final String batch; // directory or glob of instance files to solve one after the other
 
     // Optional Options:
-    public final boolean gif; // generate step-by-step display of the merging process
+    public final String render; // which images to save: "none", "final" (the cover) or "all" (every step)
     public final int seed;  // random seed to use
     public final int searchLimit; // number of unsuccessful attempts the tool will make to find a pair of
                                   // convex pieces to merge before terminating
     public final int width; // width of the saved images (in pixels)
     public final int height;  // height of the saved images (in pixels)
+    public final String imageFormat; // format of the saved images: "png", "svg" or "both"
+    public final String pairing; // how pairs of pieces to merge are chosen: "adjacent" or "random"
+    public final String triangulator; // how the initial cover is computed: "earclip" or "cdt"
+    public final int threads; // number of independent reductions run in parallel (the smallest cover is kept)
+    public final int mergeThreads; // number of threads reducing a single cover together
+    public final int timeLimit; // wall-clock budget for solving an instance (in seconds), 0 if unlimited
+    public final int jobs; // number of instances solved at the same time in batch mode
+    public final String summary; // file the outcome of each instance is appended to in batch mode
+    public final String cache; // directory of preprocessed instances, null if not caching
+    public final String checkpoint; // directory the covers are periodically saved to and resumed from, null if none
+    public final int progressInterval; // seconds between progress reports (and checkpoints), 0 for none
+    public final String metrics; // directory the metrics of each instance are saved to, null if none
+    public final String metricsFormat; // format of the saved metrics: "json" or "prometheus"
+    public final boolean validate; // whether the cover is checked by CoverValidator before it is saved
+    public final boolean removeRedundant; // whether pieces covered by the other pieces are removed (RedundantPieces)
+    public final boolean inflate; // whether merged pieces are grown toward the vertices of the polygon around them
+    public final String optimizer; // how the cover is reduced: "greedy" or "lns" (see CoverOptimizer)
 
     // Default Values:
+    public static final String RENDER_DEFAULT = "final";
     public static final int SEED_DEFAULT = 0;
     public static final int SEARCH_LIMIT_DEFAULT = 10000;
     public static final int WIDTH_DEFAULT = 1000;
     public static final int HEIGHT_DEFAULT = 1000;
+    public static final String IMAGE_FORMAT_DEFAULT = "png";
+    public static final String PAIRING_DEFAULT = "adjacent";
+    public static final String TRIANGULATOR_DEFAULT = "earclip";
+    public static final int THREADS_DEFAULT = 1;
+    public static final int MERGE_THREADS_DEFAULT = 1;
+    public static final int TIME_LIMIT_DEFAULT = 0;
+    public static final int JOBS_DEFAULT = 1;
+    public static final String SUMMARY_DEFAULT = "summary.csv";
+    public static final int PROGRESS_INTERVAL_DEFAULT = 10;
+    public static final String METRICS_FORMAT_DEFAULT = "json";
+    public static final String OPTIMIZER_DEFAULT = "greedy";
 
     CLO(String[] args) {
         Options options = new Options();
 
         Option file = new Option("file", "file", true,
                 "Problem instance file.");
-        file.setRequired(true);
+        file.setRequired(false);
         file.setType(String.class);
         options.addOption(file);
 
+        Option batch = new Option("batch", "batch", true,
+                "Directory (all *.instance.json files in it) or glob (e.g. \"instances/*.instance.json\") of " +
+                        "problem instance files to solve in a single run, instead of -file.");
+        batch.setRequired(false);
+        batch.setType(String.class);
+        options.addOption(batch);
+
+        Option render = new Option("render", "render", true,
+                "Which images to save: \"none\", \"final\" (the final cover) or \"all\" (the original " +
+                        "polygon, each step of the algorithm and the final cover).");
+        render.setRequired(false);
+        render.setType(String.class);
+        options.addOption(render);
+
         Option gif = new Option("gif", "gif", false,
-                "Generate a .png file for each step in the algorithm.");
+                "Generate a .png file for each step in the algorithm (same as -render all).");
         gif.setRequired(false);
         gif.setType(boolean.class);
         options.addOption(gif);
@@ -61,6 +105,122 @@ public class CLO { // command line options
         height.setType(Number.class);
         options.addOption(height);
 
+        Option imageFormat = new Option("imageFormat", "imageFormat", true,
+                "Format of the saved images: \"png\", \"svg\" (vector images with the exact coordinates, " +
+                        "for zooming into large covers) or \"both\".");
+        imageFormat.setRequired(false);
+        imageFormat.setType(String.class);
+        options.addOption(imageFormat);
+
+        Option pairing = new Option("pairing", "pairing", true,
+                "How pairs of pieces to merge are chosen: \"adjacent\" (a random piece and one of its " +
+                        "neighbours) or \"random\" (two random pieces).");
+        pairing.setRequired(false);
+        pairing.setType(String.class);
+        options.addOption(pairing);
+
+        Option triangulator = new Option("triangulator", "triangulator", true,
+                "How the polygon is triangulated: \"earclip\" (ear clipping of the polygon with its holes " +
+                        "bridged) or \"cdt\" (constrained Delaunay triangulation).");
+        triangulator.setRequired(false);
+        triangulator.setType(String.class);
+        options.addOption(triangulator);
+
+        Option threads = new Option("threads", "threads", true,
+                "Number of independent reductions (with seeds seed, seed+1, ...) to run in parallel; " +
+                        "the smallest cover found is kept.");
+        threads.setRequired(false);
+        threads.setType(Number.class);
+        options.addOption(threads);
+
+        Option mergeThreads = new Option("mergeThreads", "mergeThreads", true,
+                "Number of threads merging pieces of a single cover concurrently (in each of the runs " +
+                        "started with -threads).");
+        mergeThreads.setRequired(false);
+        mergeThreads.setType(Number.class);
+        options.addOption(mergeThreads);
+
+        Option timeLimit = new Option("timeLimit", "timeLimit", true,
+                "Wall-clock budget for solving an instance (in seconds), unlimited by default. Once it is " +
+                        "spent, the best cover found so far is returned.");
+        timeLimit.setRequired(false);
+        timeLimit.setType(Number.class);
+        options.addOption(timeLimit);
+
+        Option jobs = new Option("jobs", "jobs", true,
+                "Number of instances solved at the same time with -batch.");
+        jobs.setRequired(false);
+        jobs.setType(Number.class);
+        options.addOption(jobs);
+
+        Option summary = new Option("summary", "summary", true,
+                "File to write the outcome (cover size, running time or error) of each instance to with -batch.");
+        summary.setRequired(false);
+        summary.setType(String.class);
+        options.addOption(summary);
+
+        Option cache = new Option("cache", "cache", true,
+                "Directory to keep preprocessed instances (polygon, triangulation and edge index) in, so that " +
+                        "solving an instance again starts right away with the reduction of the cover.");
+        cache.setRequired(false);
+        cache.setType(String.class);
+        options.addOption(cache);
+
+        Option checkpoint = new Option("checkpoint", "checkpoint", true,
+                "Directory to save the cover of each instance to while it is being reduced (with every " +
+                        "progress report); a later run resumes from the saved cover.");
+        checkpoint.setRequired(false);
+        checkpoint.setType(String.class);
+        options.addOption(checkpoint);
+
+        Option progressInterval = new Option("progressInterval", "progressInterval", true,
+                "Seconds between reports of the size of the cover (and checkpoints), 0 for none.");
+        progressInterval.setRequired(false);
+        progressInterval.setType(Number.class);
+        options.addOption(progressInterval);
+
+        Option metrics = new Option("metrics", "metrics", true,
+                "Directory to save the metrics of each instance to (pairs drawn, merges, reasons pairs were not " +
+                        "merged, hull sizes, time per phase), with every progress report and at the end.");
+        metrics.setRequired(false);
+        metrics.setType(String.class);
+        options.addOption(metrics);
+
+        Option metricsFormat = new Option("metricsFormat", "metricsFormat", true,
+                "Format of the saved metrics: \"json\" or \"prometheus\" (text exposition format).");
+        metricsFormat.setRequired(false);
+        metricsFormat.setType(String.class);
+        options.addOption(metricsFormat);
+
+        Option validate = new Option("validate", "validate", false,
+                "Check that the cover is valid (convex pieces within the polygon that cover all of it) before " +
+                        "saving it, and fail if it is not.");
+        validate.setRequired(false);
+        validate.setType(boolean.class);
+        options.addOption(validate);
+
+        Option removeRedundant = new Option("removeRedundant", "removeRedundant", false,
+                "Remove the pieces that the other pieces of the cover already cover, at the start and after " +
+                        "every merge.");
+        removeRedundant.setRequired(false);
+        removeRedundant.setType(boolean.class);
+        options.addOption(removeRedundant);
+
+        Option inflate = new Option("inflate", "inflate", false,
+                "Grow each merged piece, as far as it stays convex and within the polygon, by taking in the " +
+                        "vertices of the polygon around it.");
+        inflate.setRequired(false);
+        inflate.setType(boolean.class);
+        options.addOption(inflate);
+
+        Option optimizer = new Option("optimizer", "optimizer", true,
+                "How the cover is reduced: \"greedy\" (random merges until -searchLimit attempts in a row fail) " +
+                        "or \"lns\" (the same, followed by a large neighbourhood search with simulated annealing " +
+                        "that stops after -searchLimit moves in a row without a smaller cover).");
+        optimizer.setRequired(false);
+        optimizer.setType(String.class);
+        options.addOption(optimizer);
+
         CommandLineParser parser = new DefaultParser();
         HelpFormatter formatter = new HelpFormatter();
         CommandLine cmd = null;
@@ -74,7 +234,18 @@ public class CLO { // command line options
         }
 
         this.file = cmd.getOptionValue("file");
-        this.gif = cmd.hasOption("gif");
+        this.batch = cmd.getOptionValue("batch");
+        if ((this.file == null) == (this.batch == null)) {
+            System.err.println("Exactly one of -file and -batch must be given");
+            formatter.printHelp("utility-name", options);
+            System.exit(1);
+        }
+        this.render = cmd.hasOption("gif") ? "all" : cmd.getOptionValue("render", RENDER_DEFAULT);
+        if (!this.render.equals("none") && !this.render.equals("final") && !this.render.equals("all")) {
+            System.err.println("Unknown render mode: " + this.render);
+            formatter.printHelp("utility-name", options);
+            System.exit(1);
+        }
         this.seed = cmd.hasOption("seed") ?
                 Integer.parseInt(cmd.getOptionValue("seed")) :
                 SEED_DEFAULT;
@@ -87,6 +258,106 @@ public class CLO { // command line options
         this.height = cmd.hasOption("height") ?
                 Integer.parseInt(cmd.getOptionValue("height")) :
                 HEIGHT_DEFAULT;
+        this.imageFormat = cmd.getOptionValue("imageFormat", IMAGE_FORMAT_DEFAULT);
+        if (!this.imageFormat.equals("png") && !this.imageFormat.equals("svg") && !this.imageFormat.equals("both")) {
+            System.err.println("Unknown image format: " + this.imageFormat);
+            formatter.printHelp("utility-name", options);
+            System.exit(1);
+        }
+        this.pairing = cmd.getOptionValue("pairing", PAIRING_DEFAULT);
+        this.triangulator = cmd.getOptionValue("triangulator", TRIANGULATOR_DEFAULT);
+        if (!this.triangulator.equals("earclip") && !this.triangulator.equals("cdt")) {
+            System.err.println("Unknown triangulator: " + this.triangulator);
+            formatter.printHelp("utility-name", options);
+            System.exit(1);
+        }
+        this.threads = cmd.hasOption("threads") ?
+                Integer.parseInt(cmd.getOptionValue("threads")) :
+                THREADS_DEFAULT;
+        if (this.threads < 1) {
+            System.err.println("The number of threads must be at least 1, not " + this.threads);
+            formatter.printHelp("utility-name", options);
+            System.exit(1);
+        }
+        this.mergeThreads = cmd.hasOption("mergeThreads") ?
+                Integer.parseInt(cmd.getOptionValue("mergeThreads")) :
+                MERGE_THREADS_DEFAULT;
+        if (this.mergeThreads < 1) {
+            System.err.println("The number of merge threads must be at least 1, not " + this.mergeThreads);
+            formatter.printHelp("utility-name", options);
+            System.exit(1);
+        }
+        this.timeLimit = cmd.hasOption("timeLimit") ?
+                Integer.parseInt(cmd.getOptionValue("timeLimit")) :
+                TIME_LIMIT_DEFAULT;
+        this.jobs = cmd.hasOption("jobs") ?
+                Integer.parseInt(cmd.getOptionValue("jobs")) :
+                JOBS_DEFAULT;
+        if (this.jobs < 1) {
+            System.err.println("The number of jobs must be at least 1, not " + this.jobs);
+            formatter.printHelp("utility-name", options);
+            System.exit(1);
+        }
+        this.summary = cmd.getOptionValue("summary", SUMMARY_DEFAULT);
+        this.cache = cmd.getOptionValue("cache");
+        this.checkpoint = cmd.getOptionValue("checkpoint");
+        this.progressInterval = cmd.hasOption("progressInterval") ?
+                Integer.parseInt(cmd.getOptionValue("progressInterval")) :
+                PROGRESS_INTERVAL_DEFAULT;
+        this.metrics = cmd.getOptionValue("metrics");
+        this.metricsFormat = cmd.getOptionValue("metricsFormat", METRICS_FORMAT_DEFAULT);
+        if (!this.metricsFormat.equals("json") && !this.metricsFormat.equals("prometheus")) {
+            System.err.println("Unknown metrics format: " + this.metricsFormat);
+            formatter.printHelp("utility-name", options);
+            System.exit(1);
+        }
+        this.validate = cmd.hasOption("validate");
+        this.removeRedundant = cmd.hasOption("removeRedundant");
+        this.inflate = cmd.hasOption("inflate");
+        this.optimizer = cmd.getOptionValue("optimizer", OPTIMIZER_DEFAULT);
+        if (!this.optimizer.equals("greedy") && !this.optimizer.equals("lns")) {
+            System.err.println("Unknown optimizer: " + this.optimizer);
+            formatter.printHelp("utility-name", options);
+            System.exit(1);
+        }
+        if (!this.pairing.equals("adjacent") && !this.pairing.equals("random")) {
+            System.err.println("Unknown pairing: " + this.pairing);
+            formatter.printHelp("utility-name", options);
+            System.exit(1);
+        }
     }
 
+    /**
+     * The same options, for solving the given instance file (used for each instance of a batch)
+     */
+    private CLO(CLO other, String file) {
+        this.file = file;
+        this.batch = null;
+        this.render = other.render;
+        this.seed = other.seed;
+        this.searchLimit = other.searchLimit;
+        this.width = other.width;
+        this.height = other.height;
+        this.imageFormat = other.imageFormat;
+        this.pairing = other.pairing;
+        this.triangulator = other.triangulator;
+        this.threads = other.threads;
+        this.mergeThreads = other.mergeThreads;
+        this.timeLimit = other.timeLimit;
+        this.jobs = other.jobs;
+        this.summary = other.summary;
+        this.cache = other.cache;
+        this.checkpoint = other.checkpoint;
+        this.progressInterval = other.progressInterval;
+        this.metrics = other.metrics;
+        this.metricsFormat = other.metricsFormat;
+        this.validate = other.validate;
+        this.removeRedundant = other.removeRedundant;
+        this.inflate = other.inflate;
+        this.optimizer = other.optimizer;
+    }
+
+    CLO forFile(String file) {
+        return new CLO(this, file);
+    }
 }
\ No newline at end of file
@@ -0,0 +1,183 @@
+package geo;
+
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Thread-safe store of the pieces of a cover, so that several threads can reduce one cover at the same time.
+ * Like in CoverGraph, pieces have stable ids and a merge retires both ids and gives the union a new one. Each id
+ * has a slot holding the piece and the ids of its neighbours; slots are replaced, never modified.
+ * Workers read slots without locking, build and check the hull of two pieces on their own, and only then commit
+ * the merge: with the locks of both slots held, the commit goes through only if both slots still hold the pieces
+ * the hull was built from. A conflicting commit is simply dropped, so the cover stays valid whatever the
+ * interleaving.
+ */
+public class ConcurrentCover {
+
+    private static final int STRIPES = 64; // number of locks the slots are spread over
+    private static final int SAMPLING_ATTEMPTS = 32;
+
+    private static final class Slot {
+        final ConvexPolygon piece;
+        final int[] neighbours; // neighbour ids at the time the slot was created, some may be retired since
+
+        Slot(ConvexPolygon piece, int[] neighbours) {
+            this.piece = piece;
+            this.neighbours = neighbours;
+        }
+    }
+
+    private final AtomicReferenceArray<Slot> slots; // null for retired ids and for ids not handed out yet
+    private final AtomicIntegerArray mergedInto; // for a retired id, the id of the union that replaced it
+    private final AtomicInteger nextId;
+    private final AtomicInteger size;
+    private final ReentrantLock[] locks = new ReentrantLock[STRIPES];
+
+    /**
+     * Take over the pieces and adjacency of a freshly built graph (one in which no merges have happened yet, so
+     * that its ids are 0, ..., n-1)
+     */
+    public ConcurrentCover(CoverGraph graph) {
+        int n = graph.size();
+        // every merge retires two ids and creates one, so there can never be more than 2n ids
+        slots = new AtomicReferenceArray<>(2 * n);
+        mergedInto = new AtomicIntegerArray(2 * n);
+        for (int id = 0; id < n; id++) {
+            List<Integer> adjacent = graph.neighbours(id);
+            int[] neighbours = new int[adjacent.size()];
+            for (int k = 0; k < neighbours.length; k++) {
+                neighbours[k] = adjacent.get(k);
+            }
+            slots.set(id, new Slot(graph.get(id), neighbours));
+            mergedInto.set(id, -1);
+        }
+        for (int id = n; id < 2 * n; id++) {
+            mergedInto.set(id, -1);
+        }
+        nextId = new AtomicInteger(n);
+        size = new AtomicInteger(n);
+        for (int i = 0; i < STRIPES; i++) {
+            locks[i] = new ReentrantLock();
+        }
+    }
+
+    /**
+     * Number of pieces currently in the cover
+     */
+    public int size() {
+        return size.get();
+    }
+
+    /**
+     * The piece with the given id, or null if it has been merged into another one
+     */
+    public ConvexPolygon get(int id) {
+        Slot slot = slots.get(id);
+        return slot == null ? null : slot.piece;
+    }
+
+    /**
+     * The pieces currently in the cover. While merges are running, the list may include pieces along with the union
+     * that replaced them (a union is added before its pieces are removed), so it always is a cover, just not
+     * necessarily the current one.
+     */
+    public List<ConvexPolygon> pieces() {
+        List<ConvexPolygon> result = new ArrayList<>();
+        for (int id = 0; id < nextId.get(); id++) {
+            Slot slot = slots.get(id);
+            if (slot != null) {
+                result.add(slot.piece);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Follow the merges an id went through to the id of the piece that now covers it
+     */
+    private int resolve(int id) {
+        int next;
+        while ((next = mergedInto.get(id)) != -1) {
+            id = next;
+        }
+        return id;
+    }
+
+    /**
+     * Id of a piece chosen at random: uniformly among the live ids if one is found after a few attempts,
+     * otherwise the piece a random id has been merged into.
+     */
+    public int randomPiece(Random random) {
+        int bound = nextId.get();
+        for (int attempt = 0; attempt < SAMPLING_ATTEMPTS; attempt++) {
+            int id = random.nextInt(bound);
+            if (slots.get(id) != null) {
+                return id;
+            }
+        }
+        return resolve(random.nextInt(bound));
+    }
+
+    /**
+     * Id of a random neighbour of the given piece, or -1 if it has none (or has been merged in the meantime)
+     */
+    public int randomNeighbour(int id, Random random) {
+        Slot slot = slots.get(id);
+        if (slot == null || slot.neighbours.length == 0) {
+            return -1;
+        }
+        int neighbour = resolve(slot.neighbours[random.nextInt(slot.neighbours.length)]);
+        return neighbour == id ? -1 : neighbour;
+    }
+
+    /**
+     * Replace two pieces by their union, provided that both of them are still in the cover. Returns false if
+     * another thread has merged either of them in the meantime, in which case nothing changes.
+     */
+    public boolean tryMerge(int first, ConvexPolygon firstPiece, int second, ConvexPolygon secondPiece, ConvexPolygon union) {
+        ReentrantLock lock1 = locks[Math.min(first % STRIPES, second % STRIPES)];
+        ReentrantLock lock2 = locks[Math.max(first % STRIPES, second % STRIPES)];
+        lock1.lock();
+        lock2.lock(); // may be the same lock as lock1, which is fine since it is reentrant
+        try {
+            Slot firstSlot = slots.get(first);
+            Slot secondSlot = slots.get(second);
+            if (firstSlot == null || secondSlot == null || firstSlot.piece != firstPiece || secondSlot.piece != secondPiece) {
+                return false;
+            }
+            Set<Integer> adjacent = new LinkedHashSet<>();
+            for (int neighbour : firstSlot.neighbours) {
+                adjacent.add(resolve(neighbour));
+            }
+            for (int neighbour : secondSlot.neighbours) {
+                adjacent.add(resolve(neighbour));
+            }
+            adjacent.remove(first);
+            adjacent.remove(second);
+            int[] neighbours = new int[adjacent.size()];
+            int k = 0;
+            for (int neighbour : adjacent) {
+                neighbours[k++] = neighbour;
+            }
+            int id = nextId.getAndIncrement();
+            slots.set(id, new Slot(union, neighbours));
+            // redirect the retired ids before clearing their slots, so that readers can always resolve them
+            mergedInto.set(first, id);
+            mergedInto.set(second, id);
+            slots.set(first, null);
+            slots.set(second, null);
+            size.decrementAndGet();
+            return true;
+        } finally {
+            lock2.unlock();
+            lock1.unlock();
+        }
+    }
+}
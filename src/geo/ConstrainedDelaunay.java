@@ -0,0 +1,454 @@
+package geo;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Constrained Delaunay triangulation of a polygon with holes, computed directly (holes do not have to be bridged
+ * first). The vertices are inserted one by one into a triangle enclosing all of them (in z-order, so that the
+ * point location walks stay short), restoring the Delaunay property with edge flips after every insertion. The
+ * edges of the polygon are then forced into the triangulation by flipping away the edges they cross (Sloan's
+ * algorithm), and finally the triangles outside the polygon or inside holes are dropped by a flood fill that
+ * counts how many polygon edges separate a triangle from the outside.
+ *
+ * Triangles are stored in flat arrays: the vertices of triangle t are v[3t], v[3t+1], v[3t+2] in counterclockwise
+ * order, edge k of t goes from v[3t+k] to v[3t+(k+1)%3], and adj[3t+k] is the triangle on the other side of it
+ * (-1 if none).
+ */
+public class ConstrainedDelaunay {
+
+    private final double[] x, y; // coordinates of the vertices; the last three form the enclosing triangle
+    private final Point[] points;
+    private final int n; // number of polygon vertices
+    private int[] v = new int[0];
+    private int[] adj = new int[0];
+    private int triangles = 0;
+    private final int[] vertexTriangle; // some triangle containing each vertex
+    private final Set<Long> constrained = new HashSet<>(); // polygon edges, keyed by their (sorted) vertex ids
+    private int last = 0; // triangle where the next point location walk starts
+
+    public ConstrainedDelaunay(PolygonWithHoles polygon) {
+        List<Point[]> rings = new ArrayList<>();
+        rings.add(polygon.outerBoundary);
+        rings.addAll(Arrays.asList(polygon.holes));
+        Map<Point, Integer> ids = new HashMap<>();
+        List<Point> unique = new ArrayList<>();
+        for (Point[] ring : rings) {
+            for (Point point : ring) {
+                if (!ids.containsKey(point)) {
+                    ids.put(point, unique.size());
+                    unique.add(point);
+                }
+            }
+        }
+        n = unique.size();
+        points = unique.toArray(new Point[0]);
+        x = new double[n + 3];
+        y = new double[n + 3];
+        double minX = Double.POSITIVE_INFINITY, minY = Double.POSITIVE_INFINITY;
+        double maxX = Double.NEGATIVE_INFINITY, maxY = Double.NEGATIVE_INFINITY;
+        for (int i = 0; i < n; i++) {
+            x[i] = points[i].x;
+            y[i] = points[i].y;
+            minX = Math.min(minX, x[i]);
+            minY = Math.min(minY, y[i]);
+            maxX = Math.max(maxX, x[i]);
+            maxY = Math.max(maxY, y[i]);
+        }
+        vertexTriangle = new int[n + 3];
+
+        // enclosing triangle: big enough to contain every vertex well inside, but not so big that orientation
+        // tests against its corners lose precision
+        double size = 16 * Math.max(1, Math.max(maxX - minX, maxY - minY));
+        double centerX = Math.floor((minX + maxX) / 2), centerY = Math.floor((minY + maxY) / 2);
+        x[n] = centerX - size;
+        y[n] = centerY - size;
+        x[n+1] = centerX + size;
+        y[n+1] = centerY - size;
+        x[n+2] = centerX;
+        y[n+2] = centerY + size;
+        addTriangle(n, n + 1, n + 2, -1, -1, -1);
+
+        for (int i : zOrder(minX, minY, maxX, maxY)) {
+            insertPoint(i);
+        }
+        for (Point[] ring : rings) {
+            for (int i = 0; i < ring.length; i++) {
+                int a = ids.get(ring[i]), b = ids.get(ring[(i+1)%ring.length]);
+                if (a != b) {
+                    insertConstraint(a, b);
+                }
+            }
+        }
+    }
+
+    /**
+     * The triangles inside the polygon (outside of its holes), in counterclockwise order
+     */
+    public List<Triangle> triangles() throws ConvexPolygon.NotConvexException {
+        // 0-1 breadth-first search from the outside: crossing a polygon edge increments the depth
+        int[] depth = new int[triangles];
+        Arrays.fill(depth, -1);
+        Deque<Integer> queue = new ArrayDeque<>();
+        depth[vertexTriangle[n]] = 0;
+        queue.add(vertexTriangle[n]);
+        while (!queue.isEmpty()) {
+            int t = queue.poll();
+            for (int k = 0; k < 3; k++) {
+                int other = adj[3*t+k];
+                if (other == -1) {
+                    continue;
+                }
+                boolean crossesPolygon = isConstrained(v[3*t+k], v[3*t+(k+1)%3]);
+                int d = depth[t] + (crossesPolygon ? 1 : 0);
+                if (depth[other] == -1 || d < depth[other]) {
+                    depth[other] = d;
+                    if (crossesPolygon) {
+                        queue.addLast(other);
+                    } else {
+                        queue.addFirst(other);
+                    }
+                }
+            }
+        }
+        List<Triangle> result = new ArrayList<>();
+        for (int t = 0; t < triangles; t++) {
+            if (depth[t] % 2 == 1 && v[3*t] < n && v[3*t+1] < n && v[3*t+2] < n) {
+                result.add(new Triangle(points[v[3*t]], points[v[3*t+1]], points[v[3*t+2]]));
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Order the vertices along a z-order curve so that consecutive insertions are close to each other
+     */
+    private Integer[] zOrder(double minX, double minY, double maxX, double maxY) {
+        Integer[] order = new Integer[n];
+        long[] keys = new long[n];
+        double scale = 65535 / Math.max(Double.MIN_NORMAL, Math.max(maxX - minX, maxY - minY));
+        for (int i = 0; i < n; i++) {
+            order[i] = i;
+            long xi = (long) ((x[i] - minX) * scale), yi = (long) ((y[i] - minY) * scale);
+            long key = 0;
+            for (int bit = 15; bit >= 0; bit--) {
+                key = (key << 2) | (((yi >> bit) & 1) << 1) | ((xi >> bit) & 1);
+            }
+            keys[i] = key;
+        }
+        Arrays.sort(order, (i, j) -> Long.compare(keys[i], keys[j]));
+        return order;
+    }
+
+    // ---------------------------------------------------------------------------------------------------------
+    // Geometric predicates
+
+    private int orient(int a, int b, int c) {
+        return Predicates.orientation(x[a], y[a], x[b], y[b], x[c], y[c]);
+    }
+
+    /**
+     * Is d inside the circumcircle of the counterclockwise triangle (a, b, c)? Only answers true when the
+     * determinant is positive beyond its rounding error, so that no edge is ever flipped back and forth.
+     */
+    private boolean inCircle(int a, int b, int c, int d) {
+        double adx = x[a] - x[d], ady = y[a] - y[d];
+        double bdx = x[b] - x[d], bdy = y[b] - y[d];
+        double cdx = x[c] - x[d], cdy = y[c] - y[d];
+        double alift = adx * adx + ady * ady;
+        double blift = bdx * bdx + bdy * bdy;
+        double clift = cdx * cdx + cdy * cdy;
+        double det = alift * (bdx * cdy - cdx * bdy) + blift * (cdx * ady - adx * cdy) + clift * (adx * bdy - bdx * ady);
+        double permanent = alift * (Math.abs(bdx * cdy) + Math.abs(cdx * bdy)) +
+                           blift * (Math.abs(cdx * ady) + Math.abs(adx * cdy)) +
+                           clift * (Math.abs(adx * bdy) + Math.abs(bdx * ady));
+        return det > 1e-14 * permanent;
+    }
+
+    /**
+     * Is v strictly between a and b, given that the three are collinear?
+     */
+    private boolean isBetween(int a, int v, int b) {
+        return (x[v] - x[a]) * (x[b] - x[a]) + (y[v] - y[a]) * (y[b] - y[a]) > 0 &&
+               (x[v] - x[b]) * (x[a] - x[b]) + (y[v] - y[b]) * (y[a] - y[b]) > 0;
+    }
+
+    // ---------------------------------------------------------------------------------------------------------
+    // Triangle bookkeeping
+
+    private int addTriangle(int a, int b, int c, int nab, int nbc, int nca) {
+        if (3 * triangles == v.length) {
+            v = Arrays.copyOf(v, Math.max(48, 2 * v.length));
+            adj = Arrays.copyOf(adj, v.length);
+        }
+        int t = triangles++;
+        setTriangle(t, a, b, c, nab, nbc, nca);
+        return t;
+    }
+
+    private void setTriangle(int t, int a, int b, int c, int nab, int nbc, int nca) {
+        v[3*t] = a;
+        v[3*t+1] = b;
+        v[3*t+2] = c;
+        adj[3*t] = nab;
+        adj[3*t+1] = nbc;
+        adj[3*t+2] = nca;
+        vertexTriangle[a] = t;
+        vertexTriangle[b] = t;
+        vertexTriangle[c] = t;
+    }
+
+    /**
+     * Make the triangle on the other side of edge (a, b) of triangle t point back to t
+     */
+    private void linkBack(int t, int a, int b) {
+        int other = adj[3*t+indexOfEdge(t, a, b)];
+        if (other != -1) {
+            adj[3*other+indexOfEdge(other, b, a)] = t;
+        }
+    }
+
+    /**
+     * Index k such that edge k of t goes from a to b, or -1
+     */
+    private int indexOfEdge(int t, int a, int b) {
+        for (int k = 0; k < 3; k++) {
+            if (v[3*t+k] == a && v[3*t+(k+1)%3] == b) {
+                return k;
+            }
+        }
+        return -1;
+    }
+
+    private int indexOfVertex(int t, int a) {
+        return v[3*t] == a ? 0 : v[3*t+1] == a ? 1 : 2;
+    }
+
+    private static long key(int a, int b) {
+        return ((long) Math.min(a, b) << 32) | Math.max(a, b);
+    }
+
+    private boolean isConstrained(int a, int b) {
+        return constrained.contains(key(a, b));
+    }
+
+    /**
+     * Find a triangle t and index k such that edge k of t goes from a to b, by turning around a.
+     * Returns 3t+k, or -1 if there is no such edge.
+     */
+    private int findEdge(int a, int b) {
+        int start = vertexTriangle[a], t = start;
+        do {
+            int i = indexOfVertex(t, a);
+            if (v[3*t+(i+1)%3] == b) {
+                return 3*t+i;
+            }
+            t = adj[3*t+(i+2)%3];
+        } while (t != -1 && t != start);
+        return -1;
+    }
+
+    /**
+     * Flip edge k of triangle t: the two triangles (a, b, c) and (b, a, d) on both sides of it become
+     * (a, d, c) and (d, b, c), which are stored in t and in its former neighbour respectively.
+     */
+    private void flip(int t, int k) {
+        int a = v[3*t+k], b = v[3*t+(k+1)%3], c = v[3*t+(k+2)%3];
+        int u = adj[3*t+k];
+        int j = indexOfEdge(u, b, a);
+        int d = v[3*u+(j+2)%3];
+        int nbc = adj[3*t+(k+1)%3], nca = adj[3*t+(k+2)%3];
+        int nad = adj[3*u+(j+1)%3], ndb = adj[3*u+(j+2)%3];
+        setTriangle(t, a, d, c, nad, u, nca);
+        setTriangle(u, d, b, c, ndb, nbc, t);
+        linkBack(t, a, d);
+        linkBack(u, b, c);
+    }
+
+    // ---------------------------------------------------------------------------------------------------------
+    // Point insertion
+
+    private int locate(int p) {
+        int t = last;
+        int steps = 0;
+        walk:
+        while (true) {
+            int offset = (steps++) % 3; // varying the first edge tested prevents the walk from cycling
+            for (int e = 0; e < 3; e++) {
+                int k = (e + offset) % 3;
+                if (orient(v[3*t+k], v[3*t+(k+1)%3], p) < 0) {
+                    t = adj[3*t+k];
+                    continue walk;
+                }
+            }
+            return t;
+        }
+    }
+
+    private void insertPoint(int p) {
+        int t = locate(p);
+        int a = v[3*t], b = v[3*t+1], c = v[3*t+2];
+        if ((x[p] == x[a] && y[p] == y[a]) || (x[p] == x[b] && y[p] == y[b]) || (x[p] == x[c] && y[p] == y[c])) {
+            return;
+        }
+        Deque<Integer> toCheck = new ArrayDeque<>(); // edges 3t+k to legalize, all opposite to p
+        int onEdge = orient(a, b, p) == 0 ? 0 : orient(b, c, p) == 0 ? 1 : orient(c, a, p) == 0 ? 2 : -1;
+        if (onEdge == -1) {
+            int nab = adj[3*t], nbc = adj[3*t+1], nca = adj[3*t+2];
+            int t2 = addTriangle(b, c, p, nbc, -1, t);
+            int t3 = addTriangle(c, a, p, nca, t, t2);
+            setTriangle(t, a, b, p, nab, t2, t3);
+            adj[3*t2+1] = t3;
+            linkBack(t2, b, c);
+            linkBack(t3, c, a);
+            toCheck.push(3*t);
+            toCheck.push(3*t2);
+            toCheck.push(3*t3);
+        } else {
+            // p lies on edge (a, b) of t, shared with triangle u = (b, a, d): split both in two
+            a = v[3*t+onEdge];
+            b = v[3*t+(onEdge+1)%3];
+            c = v[3*t+(onEdge+2)%3];
+            int nbc = adj[3*t+(onEdge+1)%3], nca = adj[3*t+(onEdge+2)%3];
+            int u = adj[3*t+onEdge];
+            int t2 = addTriangle(p, b, c, -1, nbc, t);
+            setTriangle(t, a, p, c, -1, t2, nca);
+            linkBack(t2, b, c);
+            toCheck.push(3*t+2);
+            toCheck.push(3*t2+1);
+            if (u != -1) {
+                int j = indexOfEdge(u, b, a);
+                int d = v[3*u+(j+2)%3];
+                int nad = adj[3*u+(j+1)%3], ndb = adj[3*u+(j+2)%3];
+                int u2 = addTriangle(p, a, d, t, nad, u);
+                setTriangle(u, b, p, d, t2, u2, ndb);
+                linkBack(u2, a, d);
+                adj[3*t] = u2;
+                adj[3*t2] = u;
+                toCheck.push(3*u+2);
+                toCheck.push(3*u2+1);
+            }
+        }
+        legalize(toCheck);
+        last = vertexTriangle[p];
+    }
+
+    /**
+     * Flip the given edges (and the edges uncovered by the flips) until they all satisfy the Delaunay property.
+     * Polygon edges are never flipped.
+     */
+    private void legalize(Deque<Integer> toCheck) {
+        while (!toCheck.isEmpty()) {
+            int e = toCheck.pop();
+            int t = e / 3, k = e % 3;
+            int u = adj[e];
+            int a = v[e], b = v[3*t+(k+1)%3], c = v[3*t+(k+2)%3];
+            if (u == -1 || isConstrained(a, b)) {
+                continue;
+            }
+            int d = v[3*u+(indexOfEdge(u, b, a)+2)%3];
+            if (inCircle(a, b, c, d)) {
+                flip(t, k);
+                // t is now (a, d, c) and u is (d, b, c): their outer edges have to be checked again
+                toCheck.push(3*t);
+                toCheck.push(3*t+2);
+                toCheck.push(3*u);
+                toCheck.push(3*u+1);
+            }
+        }
+    }
+
+    // ---------------------------------------------------------------------------------------------------------
+    // Constraint insertion
+
+    private void insertConstraint(int a, int b) {
+        while (a != b) {
+            if (findEdge(a, b) != -1) {
+                constrained.add(key(a, b));
+                return;
+            }
+            // turn around a until reaching the triangle the segment leaves a through (or an edge along it)
+            int t = vertexTriangle[a];
+            int i = indexOfVertex(t, a);
+            int v1 = v[3*t+(i+1)%3], v2 = v[3*t+(i+2)%3];
+            int end = -1;
+            while (true) {
+                if (orient(a, b, v1) == 0 && isBetween(a, v1, b)) {
+                    end = v1;
+                    break;
+                }
+                if (orient(a, b, v1) < 0 && orient(a, b, v2) > 0) {
+                    break;
+                }
+                t = adj[3*t+(i+2)%3];
+                i = indexOfVertex(t, a);
+                v1 = v[3*t+(i+1)%3];
+                v2 = v[3*t+(i+2)%3];
+            }
+            // walk along the segment, collecting the edges it crosses, until reaching b or a vertex on the segment
+            LinkedList<Long> crossing = new LinkedList<>();
+            while (end == -1) {
+                crossing.add(key(v1, v2));
+                int u = adj[3*t+indexOfEdge(t, v1, v2)];
+                int w = v[3*u+(indexOfEdge(u, v2, v1)+2)%3];
+                int side = orient(a, b, w);
+                if (w == b || side == 0) {
+                    end = w;
+                } else if (side < 0) {
+                    v1 = w;
+                } else {
+                    v2 = w;
+                }
+                t = u;
+            }
+            removeCrossings(a, end, crossing);
+            constrained.add(key(a, end));
+            a = end;
+        }
+    }
+
+    /**
+     * Sloan's algorithm: flip the edges crossing the segment (a, b) until none is left. An edge can only be flipped
+     * if the two triangles around it form a convex quadrilateral; those which cannot be flipped yet are tried
+     * again later. The new edges are made Delaunay again at the end.
+     */
+    private void removeCrossings(int a, int b, LinkedList<Long> crossing) {
+        List<Long> created = new ArrayList<>();
+        while (!crossing.isEmpty()) {
+            long edge = crossing.removeFirst();
+            int e = findEdge((int) (edge >>> 32), (int) edge);
+            int t = e / 3, k = e % 3;
+            int p = v[e], q = v[3*t+(k+1)%3], c = v[3*t+(k+2)%3];
+            int u = adj[e];
+            int d = v[3*u+(indexOfEdge(u, q, p)+2)%3];
+            if (!(orient(c, d, p) * orient(c, d, q) < 0)) { // the quadrilateral (p, d, q, c) is not convex
+                crossing.addLast(edge);
+                continue;
+            }
+            flip(t, k);
+            boolean stillCrossing = c != a && c != b && d != a && d != b &&
+                    orient(a, b, c) * orient(a, b, d) < 0 && orient(c, d, a) * orient(c, d, b) < 0;
+            if (stillCrossing) {
+                crossing.addLast(key(c, d));
+            } else {
+                created.add(key(c, d));
+            }
+        }
+        Deque<Integer> toCheck = new ArrayDeque<>();
+        for (long edge : created) {
+            if (edge != key(a, b)) {
+                toCheck.push(findEdge((int) (edge >>> 32), (int) edge));
+            }
+        }
+        constrained.add(key(a, b)); // so that legalizing does not flip it away again
+        legalize(toCheck);
+    }
+}
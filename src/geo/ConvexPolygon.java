@@ -2,33 +2,59 @@ package geo;
 
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.HashSet;
+import java.util.Comparator;
 import java.util.List;
 
 public class ConvexPolygon extends SimplePolygon {
 
+    // Metadata computed once at construction (polygons never change afterwards):
+    public final double minX, minY, maxX, maxY; // axis-aligned bounding box
+    public final double area;
+    public final Point centroid;
+
+    // For a hull built by mergeWith, which of the two merged pieces each vertex comes from (FIRST, SECOND or both),
+    // null otherwise
+    private final byte[] origin;
+    private static final byte FIRST = 1, SECOND = 2;
+
+    // inflateWithin looks for vertices of the polygon up to this many times the size of the piece around it, and
+    // tries the nearest ones, up to this many
+    private static final double INFLATE_REACH = 0.5;
+    private static final int INFLATE_CANDIDATES = 32;
+
     public ConvexPolygon(Point[] outerBoundary) throws NotConvexException {
+        this(outerBoundary, null);
+    }
+
+    private ConvexPolygon(Point[] outerBoundary, byte[] origin) throws NotConvexException {
         super(outerBoundary);
         if (!isConvex(outerBoundary)) {
             throw new NotConvexException();
         }
-    }
-
-    private static void pruneCollinearPoins(HashSet<Point> points) {
-        HashSet<Point> toRemove = new HashSet<>();
-        for (Point p1: points) {
-            for (Point p2: points) {
-                for (Point p3: points) {
-                    if ((p1 == p2) || (p2 == p3) || (p1 == p3)) {
-                        continue;
-                    }
-                    if (new Edge(p1, p3).contains(p2)) {
-                        toRemove.add(p2);
-                    }
-                }
-            }
+        int n = outerBoundary.length;
+        double minX = Double.POSITIVE_INFINITY, minY = Double.POSITIVE_INFINITY;
+        double maxX = Double.NEGATIVE_INFINITY, maxY = Double.NEGATIVE_INFINITY;
+        double doubleArea = 0, cx = 0, cy = 0;
+        for (int i = 0; i < n; i++) {
+            int j = (i+1)%n;
+            double x1 = coordinates[2*i], y1 = coordinates[2*i+1];
+            double x2 = coordinates[2*j], y2 = coordinates[2*j+1];
+            minX = Math.min(minX, x1);
+            minY = Math.min(minY, y1);
+            maxX = Math.max(maxX, x1);
+            maxY = Math.max(maxY, y1);
+            double cross = x1 * y2 - x2 * y1;
+            doubleArea += cross;
+            cx += (x1 + x2) * cross;
+            cy += (y1 + y2) * cross;
         }
-        points.removeAll(toRemove);
+        this.minX = minX;
+        this.minY = minY;
+        this.maxX = maxX;
+        this.maxY = maxY;
+        this.area = doubleArea / 2;
+        this.centroid = new Point(cx / (3 * doubleArea), cy / (3 * doubleArea));
+        this.origin = origin;
     }
 
     public static boolean isConvex(Point[] points) {
@@ -40,9 +66,7 @@ public class ConvexPolygon extends SimplePolygon {
 
         boolean collinear = true;
         for (int i = 2; i < n; i++) {
-            double area = (points[i].x - points[0].x) * (points[1].y - points[0].y) -
-                          (points[i].y - points[0].y) * (points[1].x - points[0].x);
-            if (area != 0) {
+            if (Predicates.orientation(points[0], points[1], points[i]) != 0) {
                 collinear = false;
                 break;
             }
@@ -52,12 +76,7 @@ public class ConvexPolygon extends SimplePolygon {
         }
 
         for (int i = 0; i < n; i++) {
-            double dx1 = points[(i+1)%n].x - points[i].x;
-            double dy1 = points[(i+1)%n].y - points[i].y;
-            double dx2 = points[(i+2)%n].x - points[(i+1)%n].x;
-            double dy2 = points[(i+2)%n].y - points[(i+1)%n].y;
-            double cross = dx1 * dy2 - dx2 * dy1;
-            if (cross < 0) {
+            if (Predicates.orientation(points[i], points[(i+1)%n], points[(i+2)%n]) < 0) {
                 return false;
             }
         }
@@ -70,88 +89,232 @@ public class ConvexPolygon extends SimplePolygon {
         }
     }
 
-    protected boolean isContainedWithin(SimplePolygon other) {
-        for (Point point : outerBoundary) {
-            if (!point.isInside(other) && !point.isOnBoundary(other)) {
-                return false;
-            }
+    /**
+     * Check if the point lies strictly inside the polygon, i.e. strictly to the left of every edge.
+     * Points on the boundary are not inside.
+     */
+    public boolean strictlyContains(Point point) {
+        return strictlyContains(point.x, point.y);
+    }
+
+    boolean strictlyContains(double x, double y) {
+        if (x <= minX || x >= maxX || y <= minY || y >= maxY) {
+            return false;
         }
-        for (int i = 0; i < other.outerBoundary.length; i++) {
-            Edge edge = new Edge(other.outerBoundary[i], other.outerBoundary[(i+1)% other.outerBoundary.length]);
-            if (other.outerBoundary[i].isInside(this) || (edge.midPoint().isInside(this))) {
+        int n = coordinates.length;
+        for (int i = 0; i < n; i += 2) {
+            int j = (i + 2) % n;
+            if (Predicates.orientation(coordinates[i], coordinates[i+1], coordinates[j], coordinates[j+1], x, y) <= 0) {
                 return false;
             }
         }
         return true;
     }
 
-    public boolean isContainedWithin(PolygonWithHoles polygon) {
-        if (!isContainedWithin(new SimplePolygon(polygon.outerBoundary))) {
+    /**
+     * Check if the point lies inside the polygon or on its boundary
+     */
+    boolean contains(double x, double y) {
+        if (x < minX || x > maxX || y < minY || y > maxY) {
             return false;
         }
-        for (Point[] hole : polygon.holes) {
-            for (int i = 0; i < hole.length; i++) {
-                Point next = hole[(i+1)%hole.length];
-                if (hole[i].isInside(this) || new Edge(hole[i], next).midPoint().isInside(this)) {
-                    return false;
-                }
+        int n = coordinates.length;
+        for (int i = 0; i < n; i += 2) {
+            int j = (i + 2) % n;
+            if (Predicates.orientation(coordinates[i], coordinates[i+1], coordinates[j], coordinates[j+1], x, y) < 0) {
+                return false;
             }
         }
         return true;
     }
 
-    public ConvexPolygon mergeWith(ConvexPolygon polygon) throws NotConvexException {
-        HashSet<Point> combinedVertices = new HashSet<>();
-        combinedVertices.addAll(Arrays.asList(this.outerBoundary));
-        combinedVertices.addAll(Arrays.asList(polygon.outerBoundary));
-        pruneCollinearPoins(combinedVertices);
-        return new ConvexPolygon(convexHull(combinedVertices.toArray(new Point[0])));
+    /**
+     * Cheap necessary condition for the convex hull of the two polygons to be contained within the given polygon,
+     * checked before any hull is built. The segment between the two centroids lies inside the hull, so if it
+     * crosses the boundary of the polygon, the hull cannot be contained in it.
+     */
+    public boolean mayMergeWithin(ConvexPolygon other, PolygonWithHoles polygon) {
+        return !polygon.edgeIndex().crosses(centroid.x, centroid.y, other.centroid.x, other.centroid.y);
     }
 
-    private enum Orientation {
-        Clockwise, Counterclockwise, Collinear;
+    /**
+     * Check if the polygon lies within the given polygon with holes, using the edge index of the latter so that
+     * only the part of its boundary near this polygon is examined.
+     */
+    public boolean isContainedWithin(PolygonWithHoles polygon) {
+        return polygon.edgeIndex().contains(this);
     }
 
-    private static Orientation orientation(Point p, Point q, Point r) {
-        double val = (q.y - p.y) * (r.x - q.x) -
-                     (q.x - p.x) * (r.y - q.y);
-        if (val == 0) return Orientation.Collinear;
-        return (val > 0)? Orientation.Clockwise: Orientation.Counterclockwise;
+    /**
+     * Same as isContainedWithin, for a hull returned by mergeWith whose two pieces are known to lie within the
+     * polygon (as the pieces of a cover do), so that only the region the hull adds to them has to be examined.
+     * Cutting the hull along the chords that join the ends of each run of consecutive vertices from the same piece
+     * leaves, for each run, a convex polygon within that piece, and in the middle the convex polygon spanned by the
+     * ends of the runs, which contains all of the added region. So the boundary of the polygon only has to be
+     * looked for around that middle part, and the vertices of the hull need no checking at all, as they are vertices
+     * of the pieces.
+     */
+    public boolean mergeIsContainedWithin(PolygonWithHoles polygon) {
+        return mergeContainment(polygon) == EdgeIndex.CONTAINED;
     }
 
     /**
-     * This method has been copied, with edits, from
-     * https://www.geeksforgeeks.org/convex-hull-using-graham-scan/
+     * Same check as mergeIsContainedWithin, telling why the hull is not within the polygon (one of the outcomes
+     * of EdgeIndex.containment)
      */
-     private static Point[] convexHull(Point points[]) {
-        int n = points.length;
-        if (n < 3) return null;
-        List<Point> hull = new ArrayList<>();
-
-        // Find the leftmost point
-        int l = 0;
-        for (int i = 1; i < n; i++)
-            if (points[i].x < points[l].x) {
-                l = i;
+    int mergeContainment(PolygonWithHoles polygon) {
+        if (origin == null) {
+            return polygon.edgeIndex().containment(this);
+        }
+        int n = outerBoundary.length;
+        double minX = Double.POSITIVE_INFINITY, minY = Double.POSITIVE_INFINITY;
+        double maxX = Double.NEGATIVE_INFINITY, maxY = Double.NEGATIVE_INFINITY;
+        for (int i = 0; i < n; i++) {
+            int j = (i + 1) % n;
+            if (piece(i) == piece(j)) {
+                continue;
             }
+            // both are ends of runs
+            double x1 = coordinates[2*i], y1 = coordinates[2*i+1], x2 = coordinates[2*j], y2 = coordinates[2*j+1];
+            minX = Math.min(minX, Math.min(x1, x2));
+            minY = Math.min(minY, Math.min(y1, y2));
+            maxX = Math.max(maxX, Math.max(x1, x2));
+            maxY = Math.max(maxY, Math.max(y1, y2));
+        }
+        if (minX > maxX) {
+            return EdgeIndex.CONTAINED; // all the vertices come from one of the pieces, so the hull is that piece
+        }
+        return polygon.edgeIndex().findBoundaryStrictlyInside(this, minX, minY, maxX, maxY);
+    }
 
-        int p = l, q;
-        do {
-            hull.add(points[p]);
+    /**
+     * The piece vertex i of a hull built by mergeWith is taken to come from (a vertex of both counts as the first)
+     */
+    private byte piece(int i) {
+        return origin[i] == SECOND ? SECOND : FIRST;
+    }
 
-            q = (p + 1) % n;
-            for (int i = 0; i < n; i++) {
-                Orientation o = orientation(points[p], points[i], points[q]);
-                if (o == Orientation.Counterclockwise) {
-                   q = i;
-                }
+    /**
+     * Convex hull of the union of the two polygons, computed in linear time. Starting from its lexicographically
+     * smallest vertex, a counterclockwise polygon consists of a lower chain going right and an upper chain coming
+     * back, both already sorted, so merging the four chains gives all the vertices in sorted order, from which the
+     * monotone chain algorithm builds the hull. Collinear (and duplicate) vertices are dropped in the same pass.
+     */
+    public ConvexPolygon mergeWith(ConvexPolygon polygon) throws NotConvexException {
+        return hullWith(polygon.sortedVertices());
+    }
+
+    /**
+     * Convex hull of the polygon and the given point, which mergeContainment checks like the hull of two pieces, the
+     * point being the second one: the point must lie within the polygon with holes (one of its vertices, say)
+     */
+    public ConvexPolygon extendTo(Point point) throws NotConvexException {
+        return hullWith(new Point[]{point});
+    }
+
+    /**
+     * Grow the polygon, which must lie within the given polygon with holes, by taking in vertices of the latter
+     * around it, nearest first: each vertex that the segment from the centroid reaches without crossing the boundary
+     * is added if the hull stays within the polygon with holes, which only the region it adds needs checking for
+     * (see mergeContainment). The result is convex, within the polygon with holes, and contains this polygon.
+     */
+    public ConvexPolygon inflateWithin(PolygonWithHoles polygon) throws NotConvexException {
+        double reach = INFLATE_REACH * Math.max(maxX - minX, maxY - minY);
+        List<Point> candidates = new ArrayList<>();
+        // every vertex of the polygon with holes starts one of its edges
+        polygon.edgeIndex().visit(minX - reach, minY - reach, maxX + reach, maxY + reach, (x1, y1, x2, y2) -> {
+            if (!contains(x1, y1)) {
+                candidates.add(new Point(x1, y1));
             }
+            return true;
+        });
+        candidates.sort(Comparator.comparingDouble(p -> (p.x - centroid.x) * (p.x - centroid.x) + (p.y - centroid.y) * (p.y - centroid.y)));
+        ConvexPolygon inflated = this;
+        for (int i = 0; i < Math.min(candidates.size(), INFLATE_CANDIDATES); i++) {
+            Point vertex = candidates.get(i);
+            if (inflated.contains(vertex.x, vertex.y) ||
+                    polygon.edgeIndex().crosses(inflated.centroid.x, inflated.centroid.y, vertex.x, vertex.y)) {
+                continue;
+            }
+            ConvexPolygon hull = inflated.extendTo(vertex);
+            if (hull.mergeContainment(polygon) == EdgeIndex.CONTAINED) {
+                inflated = hull;
+            }
+        }
+        return inflated;
+    }
 
-            p = q;
+    /**
+     * Convex hull of the polygon and the given points, sorted by x, then y (see mergeWith)
+     */
+    private ConvexPolygon hullWith(Point[] second) throws NotConvexException {
+        Point[] first = sortedVertices();
+        Point[] points = new Point[first.length + second.length];
+        byte[] from = new byte[points.length];
+        int n = 0;
+        for (int i = 0, j = 0; i < first.length || j < second.length; ) {
+            boolean takeFirst = j == second.length || (i < first.length && compare(first[i], second[j]) <= 0);
+            Point next = takeFirst ? first[i++] : second[j++];
+            if (n == 0 || !points[n-1].equals(next)) {
+                points[n] = next;
+                from[n++] = takeFirst ? FIRST : SECOND;
+            } else {
+                from[n-1] |= takeFirst ? FIRST : SECOND;
+            }
+        }
 
-        } while (p != l);
+        Point[] hull = new Point[2 * n];
+        byte[] origin = new byte[2 * n];
+        int k = 0;
+        for (int i = 0; i < n; i++) { // lower hull
+            while (k >= 2 && Predicates.orientation(hull[k-2], hull[k-1], points[i]) <= 0) {
+                k--;
+            }
+            origin[k] = from[i];
+            hull[k++] = points[i];
+        }
+        for (int i = n - 2, lower = k + 1; i >= 0; i--) { // upper hull
+            while (k >= lower && Predicates.orientation(hull[k-2], hull[k-1], points[i]) <= 0) {
+                k--;
+            }
+            origin[k] = from[i];
+            hull[k++] = points[i];
+        }
+        k = Math.max(0, k - 1);
+        return new ConvexPolygon(Arrays.copyOf(hull, k), Arrays.copyOf(origin, k));
+    }
 
-        return hull.toArray(new Point[0]);
+    /**
+     * Vertices of the polygon sorted by x, then y: the lower chain merged with the reversed upper chain.
+     */
+    private Point[] sortedVertices() {
+        int n = outerBoundary.length;
+        int min = 0, max = 0;
+        for (int i = 1; i < n; i++) {
+            if (compare(outerBoundary[i], outerBoundary[min]) < 0) {
+                min = i;
+            }
+            if (compare(outerBoundary[i], outerBoundary[max]) > 0) {
+                max = i;
+            }
+        }
+        Point[] sorted = new Point[n];
+        sorted[0] = outerBoundary[min];
+        int lower = (min + 1) % n; // walks the lower chain forward, up to max
+        int upper = (min - 1 + n) % n; // walks the upper chain backward, down to max
+        for (int k = 1; k < n; k++) {
+            if (upper == max || (lower != (max + 1) % n && compare(outerBoundary[lower], outerBoundary[upper]) <= 0)) {
+                sorted[k] = outerBoundary[lower];
+                lower = (lower + 1) % n;
+            } else {
+                sorted[k] = outerBoundary[upper];
+                upper = (upper - 1 + n) % n;
+            }
+        }
+        return sorted;
     }
 
+    private static int compare(Point p, Point q) {
+        return p.x != q.x ? Double.compare(p.x, q.x) : Double.compare(p.y, q.y);
+    }
 }
@@ -0,0 +1,211 @@
+package geo;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+/**
+ * The pieces of a cover together with their adjacency graph, where two pieces are neighbours if they touch (share
+ * a vertex, and in particular an edge) or overlap. Pieces added later (merged or inserted) are also connected to the
+ * pieces whose bounding box overlaps theirs, a few of which may not actually touch them: the graph may have
+ * more edges than that, but never misses one. Pieces get stable integer ids that are never reused: merging
+ * two pieces retires both of their ids and the merged piece gets a new one. The pieces are also kept in a grid, to
+ * find the pieces around a given place.
+ */
+public class CoverGraph {
+
+    private final List<ConvexPolygon> pieces = new ArrayList<>(); // indexed by id, null once the piece is retired
+    private final List<List<Integer>> neighbours = new ArrayList<>(); // indexed by id, null once retired
+    private int[] live = new int[16]; // ids of the pieces currently in the cover, in no particular order
+    private int[] position = new int[16]; // position of each live id in the array above
+    private int size = 0;
+    private final Grid<Integer> grid; // ids of the pieces in the cover, by bounding box
+    private int[] seen = new int[16]; // for each id, the last visit of the grid that found it
+    private int visit = 0;
+
+    /**
+     * Build the graph for an initial cover (typically a triangulation), connecting pieces that share a vertex.
+     */
+    public CoverGraph(List<? extends ConvexPolygon> cover) {
+        double minX = Double.POSITIVE_INFINITY, minY = Double.POSITIVE_INFINITY;
+        double maxX = Double.NEGATIVE_INFINITY, maxY = Double.NEGATIVE_INFINITY;
+        for (ConvexPolygon piece : cover) {
+            minX = Math.min(minX, piece.minX);
+            minY = Math.min(minY, piece.minY);
+            maxX = Math.max(maxX, piece.maxX);
+            maxY = Math.max(maxY, piece.maxY);
+        }
+        grid = cover.isEmpty() ? new Grid<>(0, 0, 0, 0, 1) : new Grid<>(minX, minY, maxX, maxY, cover.size());
+        Map<Point, List<Integer>> piecesAtVertex = new HashMap<>();
+        for (ConvexPolygon piece : cover) {
+            int id = add(piece);
+            for (Point vertex : piece.outerBoundary) {
+                piecesAtVertex.computeIfAbsent(vertex, v -> new ArrayList<>()).add(id);
+            }
+        }
+        for (int id = 0; id < pieces.size(); id++) {
+            Set<Integer> adjacent = new LinkedHashSet<>();
+            for (Point vertex : pieces.get(id).outerBoundary) {
+                adjacent.addAll(piecesAtVertex.get(vertex));
+            }
+            adjacent.remove(id);
+            neighbours.get(id).addAll(adjacent);
+        }
+    }
+
+    private int add(ConvexPolygon piece) {
+        int id = pieces.size();
+        pieces.add(piece);
+        neighbours.add(new ArrayList<>());
+        if (id >= position.length) {
+            position = Arrays.copyOf(position, 2 * position.length);
+            seen = Arrays.copyOf(seen, position.length);
+        }
+        if (size >= live.length) {
+            live = Arrays.copyOf(live, 2 * live.length);
+        }
+        live[size] = id;
+        position[id] = size++;
+        grid.add(id, piece.minX, piece.minY, piece.maxX, piece.maxY);
+        return id;
+    }
+
+    private void retire(int id) {
+        ConvexPolygon piece = pieces.get(id);
+        grid.remove(id, piece.minX, piece.minY, piece.maxX, piece.maxY);
+        int last = live[--size];
+        live[position[id]] = last;
+        position[last] = position[id];
+        pieces.set(id, null);
+        neighbours.set(id, null);
+    }
+
+    /**
+     * Number of pieces currently in the cover
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * The piece with the given id, or null if it is no longer in the cover
+     */
+    public ConvexPolygon get(int id) {
+        return pieces.get(id);
+    }
+
+    public List<Integer> neighbours(int id) {
+        return neighbours.get(id);
+    }
+
+    /**
+     * The pieces currently in the cover
+     */
+    public List<ConvexPolygon> pieces() {
+        List<ConvexPolygon> result = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            result.add(pieces.get(live[i]));
+        }
+        return result;
+    }
+
+    /**
+     * Ids of the pieces currently in the cover
+     */
+    public List<Integer> ids() {
+        List<Integer> result = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            result.add(live[i]);
+        }
+        return result;
+    }
+
+    /**
+     * Id of a piece chosen uniformly at random among the pieces in the cover
+     */
+    public int randomPiece(Random random) {
+        return live[random.nextInt(size)];
+    }
+
+    /**
+     * Id of a neighbour of the given piece chosen uniformly at random, or -1 if the piece has no neighbours
+     */
+    public int randomNeighbour(int id, Random random) {
+        List<Integer> adjacent = neighbours.get(id);
+        return adjacent.isEmpty() ? -1 : adjacent.get(random.nextInt(adjacent.size()));
+    }
+
+    /**
+     * Ids of the pieces in the cover whose bounding box overlaps the given box, except @param except
+     */
+    public List<Integer> around(double minX, double minY, double maxX, double maxY, int except) {
+        List<Integer> ids = new ArrayList<>();
+        int current = ++visit;
+        grid.visit(minX, minY, maxX, maxY, id -> {
+            if (seen[id] == current) {
+                return true; // in several cells
+            }
+            seen[id] = current;
+            ConvexPolygon piece = pieces.get(id);
+            if (id != except && piece.maxX >= minX && piece.minX <= maxX && piece.maxY >= minY && piece.minY <= maxY) {
+                ids.add(id);
+            }
+            return true;
+        });
+        return ids;
+    }
+
+    /**
+     * Add a piece to the cover and return its id. Its neighbours are the pieces whose bounding box overlaps its own,
+     * which include all the pieces it touches or overlaps.
+     */
+    public int insert(ConvexPolygon piece) {
+        List<Integer> adjacent = around(piece.minX, piece.minY, piece.maxX, piece.maxY, -1);
+        int id = add(piece);
+        for (int other : adjacent) {
+            neighbours.get(other).add(id);
+        }
+        neighbours.get(id).addAll(adjacent);
+        return id;
+    }
+
+    /**
+     * Remove a piece from the cover (one that the other pieces cover already)
+     */
+    public void remove(int id) {
+        for (int other : neighbours.get(id)) {
+            neighbours.get(other).remove(Integer.valueOf(id));
+        }
+        retire(id);
+    }
+
+    /**
+     * Replace two pieces by their union and return the id of the latter. The neighbours of the union are the
+     * neighbours of the two pieces (anything that touched either of them touches or overlaps the union) and, as
+     * the union is larger than the two together, the pieces whose bounding box overlaps its own, which include all
+     * the other pieces it touches or overlaps.
+     */
+    public int merge(int first, int second, ConvexPolygon union) {
+        Set<Integer> adjacent = new LinkedHashSet<>(neighbours.get(first));
+        adjacent.addAll(neighbours.get(second));
+        adjacent.remove(first);
+        adjacent.remove(second);
+        retire(first);
+        retire(second);
+        adjacent.addAll(around(union.minX, union.minY, union.maxX, union.maxY, -1)); // the two are out of the grid
+        int id = add(union);
+        for (int other : adjacent) {
+            List<Integer> otherNeighbours = neighbours.get(other);
+            otherNeighbours.remove(Integer.valueOf(first));
+            otherNeighbours.remove(Integer.valueOf(second));
+            otherNeighbours.add(id);
+        }
+        neighbours.get(id).addAll(adjacent);
+        return id;
+    }
+}
@@ -0,0 +1,16 @@
+package geo;
+
+import java.util.List;
+
+/**
+ * A way of reducing the size of a cover, chosen with -optimizer: the greedy random merging of Main.reduceCoverSize,
+ * or the LargeNeighbourhoodSearch that goes on from where it stops.
+ */
+interface CoverOptimizer {
+
+    /**
+     * Reduce the size of the (valid) cover of the polygon in place, until the search gives up or the @param deadline
+     * (in terms of System.nanoTime()) has passed; the cover remains valid. @param progress is told how it goes.
+     */
+    void optimize(List<ConvexPolygon> cover, PolygonWithHoles polygon, long seed, long deadline, Progress progress) throws ConvexPolygon.NotConvexException;
+}
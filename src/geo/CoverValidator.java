@@ -0,0 +1,504 @@
+package geo;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import org.apache.commons.cli.*;
+
+/**
+ * Independent check that a cover is valid: every piece is convex and within the polygon, and together the pieces
+ * cover all of it. Nothing is taken from the solver but the pieces themselves, and every decision comes down to the
+ * exact predicates, so degenerate covers (pieces meeting at a vertex, edges along the boundary, ...) are judged
+ * correctly.
+ *
+ * A convex piece is within the polygon if no edge of the polygon meets its interior, which a separating axis test
+ * against each nearby edge settles, and a point of its interior is inside the polygon. The pieces being within the
+ * polygon, they cover it if and only if the boundary of their union lies on the boundary of the polygon: along every
+ * edge of every piece, the outer side of the edge has to be covered by other pieces, except where the edge runs along
+ * the boundary of the polygon. Each piece only deals with the pieces and polygon edges around it, found through
+ * grids, so the check takes about n log n time for n pieces, and the pieces are checked in parallel.
+ *
+ * It runs on its own, on an instance and a solution file, or on the cover just found with -validate.
+ */
+final class CoverValidator {
+
+    private static final int MAX_REPORTED = 10; // problems listed in the message of an InvalidCoverException
+
+    static class InvalidCoverException extends Exception {
+        private static final long serialVersionUID = 1L;
+
+        InvalidCoverException(String message) {
+            super(message);
+        }
+    }
+
+    /**
+     * Position along the edge being walked: a point on its line, or where the line through two points crosses it
+     */
+    private static final class Position {
+        final double x, y;
+        final double toX, toY; // the second point of the line, for a crossing
+        final boolean crossing;
+
+        Position(double x, double y) {
+            this(x, y, x, y, false);
+        }
+
+        Position(double x, double y, double toX, double toY, boolean crossing) {
+            this.x = x;
+            this.y = y;
+            this.toX = toX;
+            this.toY = toY;
+            this.crossing = crossing;
+        }
+    }
+
+    private final PolygonWithHoles polygon;
+    private final ConvexPolygon[] pieces; // counterclockwise, null for the pieces that are not convex
+    private final Grid<Integer> grid; // indices of the convex pieces
+
+    private CoverValidator(PolygonWithHoles polygon, List<Point[]> cover) {
+        this.polygon = polygon;
+        this.pieces = new ConvexPolygon[cover.size()];
+        double minX = Double.POSITIVE_INFINITY, minY = Double.POSITIVE_INFINITY;
+        double maxX = Double.NEGATIVE_INFINITY, maxY = Double.NEGATIVE_INFINITY;
+        for (Point point : polygon.outerBoundary) {
+            minX = Math.min(minX, point.x);
+            minY = Math.min(minY, point.y);
+            maxX = Math.max(maxX, point.x);
+            maxY = Math.max(maxY, point.y);
+        }
+        grid = new Grid<>(minX, minY, maxX, maxY, cover.size());
+        for (int i = 0; i < pieces.length; i++) {
+            pieces[i] = convex(cover.get(i));
+            if (pieces[i] != null) {
+                grid.add(i, pieces[i].minX, pieces[i].minY, pieces[i].maxX, pieces[i].maxY);
+            }
+        }
+        polygon.edgeIndex(); // build it once before the threads start
+    }
+
+    /**
+     * The problems with the cover of the polygon, in the order of the pieces (none if the cover is valid), found
+     * with the given number of threads
+     */
+    static List<String> validate(PolygonWithHoles polygon, List<Point[]> cover, int threads) {
+        if (cover.isEmpty()) {
+            return Collections.singletonList("The cover has no pieces");
+        }
+        CoverValidator validator = new CoverValidator(polygon, cover);
+        AtomicReferenceArray<List<String>> problems = new AtomicReferenceArray<>(cover.size());
+        AtomicInteger next = new AtomicInteger();
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<Void>> workers = new ArrayList<>();
+            for (int t = 0; t < threads; t++) {
+                workers.add(pool.submit(() -> {
+                    for (int i = next.getAndIncrement(); i < cover.size(); i = next.getAndIncrement()) {
+                        problems.set(i, validator.checkPiece(i));
+                    }
+                    return null;
+                }));
+            }
+            for (Future<Void> worker : workers) {
+                worker.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while validating the cover", e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException(e.getCause());
+        } finally {
+            pool.shutdownNow();
+        }
+        List<String> result = new ArrayList<>();
+        for (int i = 0; i < cover.size(); i++) {
+            result.addAll(problems.get(i));
+        }
+        return result;
+    }
+
+    /**
+     * Check the cover of the polygon with the given number of threads, and throw if it is not valid
+     */
+    static void check(PolygonWithHoles polygon, List<? extends PolygonWithHoles> cover, int threads) throws InvalidCoverException {
+        List<Point[]> rings = new ArrayList<>(cover.size());
+        for (PolygonWithHoles piece : cover) {
+            rings.add(piece.outerBoundary);
+        }
+        List<String> problems = validate(polygon, rings, threads);
+        if (!problems.isEmpty()) {
+            throw new InvalidCoverException(describe(problems));
+        }
+    }
+
+    private static String describe(List<String> problems) {
+        StringBuilder message = new StringBuilder("The cover is not valid: ");
+        for (int i = 0; i < Math.min(problems.size(), MAX_REPORTED); i++) {
+            message.append(i > 0 ? "; " : "").append(problems.get(i));
+        }
+        if (problems.size() > MAX_REPORTED) {
+            message.append("; and ").append(problems.size() - MAX_REPORTED).append(" more problems");
+        }
+        return message.toString();
+    }
+
+    /**
+     * The piece as a counterclockwise convex polygon, or null if it is not convex (or is degenerate: fewer than three
+     * vertices, repeated vertices, all of them on a line, or a boundary that winds around more than once)
+     */
+    private static ConvexPolygon convex(Point[] ring) {
+        int n = ring.length;
+        for (int i = 0; i < n; i++) {
+            if (ring[i].equals(ring[(i + 1) % n])) {
+                return null;
+            }
+        }
+        Point[] counterclockwise = ring;
+        if (!ConvexPolygon.isConvex(counterclockwise)) {
+            counterclockwise = new Point[n];
+            for (int i = 0; i < n; i++) {
+                counterclockwise[i] = ring[n - 1 - i];
+            }
+            if (!ConvexPolygon.isConvex(counterclockwise)) {
+                return null;
+            }
+        }
+        // turning left at every vertex, the boundary has as many lowest points as it winds around
+        int lowest = 0;
+        for (int i = 0; i < n; i++) {
+            if (below(ring[i], ring[(i + n - 1) % n]) && below(ring[i], ring[(i + 1) % n])) {
+                lowest++;
+            }
+        }
+        if (lowest != 1) {
+            return null;
+        }
+        try {
+            return new ConvexPolygon(counterclockwise);
+        } catch (ConvexPolygon.NotConvexException e) {
+            return null;
+        }
+    }
+
+    private static boolean below(Point a, Point b) {
+        return a.y < b.y || (a.y == b.y && a.x < b.x);
+    }
+
+    /**
+     * The problems with the given piece
+     */
+    private List<String> checkPiece(int i) {
+        ConvexPolygon piece = pieces[i];
+        if (piece == null) {
+            return Collections.singletonList("Piece " + i + " is not convex");
+        }
+        List<String> problems = new ArrayList<>();
+        List<double[]> edges = new ArrayList<>();
+        polygon.edgeIndex().visit(piece.minX, piece.minY, piece.maxX, piece.maxY, (x1, y1, x2, y2) -> {
+            edges.add(new double[]{x1, y1, x2, y2});
+            return true;
+        });
+        String containment = checkWithin(piece, edges);
+        if (containment != null) {
+            // the coverage along its edges only means something for a piece within the polygon
+            return Collections.singletonList("Piece " + i + " " + containment);
+        }
+
+        Set<Integer> around = new LinkedHashSet<>();
+        grid.visit(piece.minX, piece.minY, piece.maxX, piece.maxY, j -> {
+            if (j != i) {
+                around.add(j);
+            }
+            return true;
+        });
+        List<ConvexPolygon> neighbours = new ArrayList<>(around.size());
+        for (int j : around) {
+            neighbours.add(pieces[j]);
+        }
+        double[] vertices = piece.coordinates;
+        int n = vertices.length / 2;
+        for (int k = 0; k < n; k++) {
+            int l = (k + 1) % n;
+            Position gap = findGap(vertices[2*k], vertices[2*k+1], vertices[2*l], vertices[2*l+1], edges, neighbours, null);
+            if (gap != null) {
+                double[] near = approximate(gap, vertices[2*k], vertices[2*k+1], vertices[2*l], vertices[2*l+1]);
+                problems.add(String.format(Locale.ROOT, "The pieces leave part of the polygon uncovered along edge %d of piece %d, near (%s, %s)",
+                        k, i, near[0], near[1]));
+            }
+        }
+        return problems;
+    }
+
+    /**
+     * Null if the convex piece is within the polygon, otherwise what is wrong with it; @param edges are the edges of
+     * the polygon around the piece
+     */
+    private String checkWithin(ConvexPolygon piece, List<double[]> edges) {
+        // a point of the interior of the piece: its centroid, unless rounding pushed that onto the boundary
+        double[] vertices = piece.coordinates;
+        double x = piece.centroid.x, y = piece.centroid.y;
+        for (int k = 4; !piece.strictlyContains(x, y) && k < vertices.length; k += 2) {
+            x = (vertices[0] + vertices[2] + vertices[k]) / 3;
+            y = (vertices[1] + vertices[3] + vertices[k+1]) / 3;
+        }
+        if (!piece.strictlyContains(x, y)) {
+            return "is too thin to find a point inside it";
+        }
+        if (!polygon.edgeIndex().isInside(x, y)) {
+            return "is not within the polygon";
+        }
+        // with one point of its interior inside the polygon, the piece is within it unless the boundary gets in
+        for (double[] edge : edges) {
+            if (meetsInterior(piece, edge[0], edge[1], edge[2], edge[3])) {
+                return String.format(Locale.ROOT, "is not within the polygon: the edge from (%s, %s) to (%s, %s) goes through it",
+                        edge[0], edge[1], edge[2], edge[3]);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Check if the segment has points in the interior of the convex piece: it does unless a line through an edge of
+     * either separates them, with the interior of the piece on one side and the segment on the other side or the line
+     */
+    private static boolean meetsInterior(ConvexPolygon piece, double x1, double y1, double x2, double y2) {
+        double[] vertices = piece.coordinates;
+        int n = vertices.length;
+        for (int i = 0; i < n; i += 2) {
+            int j = (i + 2) % n;
+            if (Predicates.orientation(vertices[i], vertices[i+1], vertices[j], vertices[j+1], x1, y1) <= 0 &&
+                    Predicates.orientation(vertices[i], vertices[i+1], vertices[j], vertices[j+1], x2, y2) <= 0) {
+                return false;
+            }
+        }
+        boolean left = false, right = false;
+        for (int i = 0; i < n; i += 2) {
+            int side = Predicates.orientation(x1, y1, x2, y2, vertices[i], vertices[i+1]);
+            left |= side > 0;
+            right |= side < 0;
+        }
+        return left && right;
+    }
+
+    /**
+     * Check if the outer side of the edge p--q of a piece is covered, by the given pieces or by the outside of the
+     * polygon, all along the part of the edge in the convex @param window (the whole edge if it is null);
+     * @param edges are the edges of the polygon around that part of the edge
+     */
+    static boolean outerSideCovered(double px, double py, double qx, double qy, List<double[]> edges, List<ConvexPolygon> neighbours, ConvexPolygon window) {
+        return findGap(px, py, qx, qy, edges, neighbours, window) == null;
+    }
+
+    /**
+     * Walk along the edge p--q of a piece and look for a part of it (of positive length) whose outer side is
+     * neither covered by one of the neighbouring pieces nor outside the polygon. Returns where the first such part
+     * starts, or null if there is none. @param edges are the edges of the polygon around the piece. Unless
+     * @param window is null, only the part of the edge in that convex polygon is looked at.
+     */
+    private static Position findGap(double px, double py, double qx, double qy, List<double[]> edges, List<ConvexPolygon> neighbours, ConvexPolygon window) {
+        List<Position[]> covered = new ArrayList<>();
+        if (window != null) {
+            // the parts outside the window do not matter: count them as covered
+            Position from = new Position(px, py), to = new Position(qx, qy);
+            double[] vertices = window.coordinates;
+            int n = vertices.length;
+            for (int i = 0; i < n; i += 2) {
+                int k = (i + 2) % n;
+                double ax = vertices[i], ay = vertices[i+1], bx = vertices[k], by = vertices[k+1];
+                int sideOfP = Predicates.orientation(ax, ay, bx, by, px, py);
+                int sideOfQ = Predicates.orientation(ax, ay, bx, by, qx, qy);
+                if (sideOfP == 0 && sideOfQ == 0) {
+                    continue; // along an edge of the window
+                } else if (sideOfP <= 0 && sideOfQ <= 0) {
+                    return null; // the edge is outside the window, but for an end maybe
+                } else if (sideOfP < 0) {
+                    Position crossing = new Position(ax, ay, bx, by, true);
+                    if (compare(crossing, from, px, py, qx, qy) > 0) {
+                        from = crossing;
+                    }
+                } else if (sideOfQ < 0) {
+                    Position crossing = new Position(ax, ay, bx, by, true);
+                    if (compare(crossing, to, px, py, qx, qy) < 0) {
+                        to = crossing;
+                    }
+                }
+            }
+            if (compare(from, to, px, py, qx, qy) >= 0) {
+                return null; // the edge meets the window in a point at most
+            }
+            covered.add(new Position[]{new Position(px, py), from});
+            covered.add(new Position[]{to, new Position(qx, qy)});
+        }
+        // the parts along the boundary of the polygon, the outer side of which is outside the polygon
+        for (double[] edge : edges) {
+            if (Predicates.orientation(px, py, qx, qy, edge[0], edge[1]) == 0 &&
+                    Predicates.orientation(px, py, qx, qy, edge[2], edge[3]) == 0) {
+                Position from = new Position(edge[0], edge[1]), to = new Position(edge[2], edge[3]);
+                covered.add(compare(from, to, px, py, qx, qy) <= 0 ? new Position[]{from, to} : new Position[]{to, from});
+            }
+        }
+        // the parts where the outer side is inside a neighbouring piece: the outer side of the edge (on its right)
+        // has to be on the inner side (on the left) of every edge of the piece
+        double minX = Math.min(px, qx), minY = Math.min(py, qy), maxX = Math.max(px, qx), maxY = Math.max(py, qy);
+        neighbourLoop:
+        for (ConvexPolygon neighbour : neighbours) {
+            if (neighbour.maxX < minX || neighbour.minX > maxX || neighbour.maxY < minY || neighbour.minY > maxY) {
+                continue;
+            }
+            Position from = new Position(px, py), to = new Position(qx, qy);
+            double[] vertices = neighbour.coordinates;
+            int n = vertices.length;
+            for (int i = 0; i < n; i += 2) {
+                int k = (i + 2) % n;
+                double ax = vertices[i], ay = vertices[i+1], bx = vertices[k], by = vertices[k+1];
+                int sideOfP = Predicates.orientation(ax, ay, bx, by, px, py);
+                int sideOfQ = Predicates.orientation(ax, ay, bx, by, qx, qy);
+                if (sideOfP == 0 && sideOfQ == 0) {
+                    // along the edge: the neighbour is on the outer side if the two edges go opposite ways
+                    boolean sameWay = px != qx ? (px < qx) == (ax < bx) : (py < qy) == (ay < by);
+                    if (sameWay) {
+                        continue neighbourLoop;
+                    }
+                } else if (sideOfP <= 0 && sideOfQ <= 0) {
+                    continue neighbourLoop;
+                } else if (sideOfP < 0) {
+                    Position crossing = new Position(ax, ay, bx, by, true);
+                    if (compare(crossing, from, px, py, qx, qy) > 0) {
+                        from = crossing;
+                    }
+                } else if (sideOfQ < 0) {
+                    Position crossing = new Position(ax, ay, bx, by, true);
+                    if (compare(crossing, to, px, py, qx, qy) < 0) {
+                        to = crossing;
+                    }
+                }
+            }
+            if (compare(from, to, px, py, qx, qy) < 0) {
+                covered.add(new Position[]{from, to});
+            }
+        }
+
+        covered.sort((a, b) -> compare(a[0], b[0], px, py, qx, qy));
+        Position reach = new Position(px, py), end = new Position(qx, qy);
+        for (Position[] part : covered) {
+            if (compare(reach, end, px, py, qx, qy) >= 0) {
+                return null; // the rest lies beyond the edge (boundary edges along the same line can go on)
+            }
+            if (compare(part[0], reach, px, py, qx, qy) > 0) {
+                return reach;
+            }
+            if (compare(part[1], reach, px, py, qx, qy) > 0) {
+                reach = part[1];
+            }
+        }
+        return compare(reach, end, px, py, qx, qy) < 0 ? reach : null;
+    }
+
+    /**
+     * Compare two positions along the line from p to q. Crossings are always strictly between p and q.
+     */
+    private static int compare(Position u, Position v, double px, double py, double qx, double qy) {
+        if (u.crossing && v.crossing) {
+            return Predicates.compareCrossings(u.x, u.y, u.toX, u.toY, v.x, v.y, v.toX, v.toY, px, py, qx, qy);
+        }
+        if (u.crossing) {
+            // the point is before the crossing if it is on the same side of the crossing line as p
+            int side = Predicates.orientation(u.x, u.y, u.toX, u.toY, v.x, v.y);
+            return side == 0 ? 0 : side == Predicates.orientation(u.x, u.y, u.toX, u.toY, px, py) ? 1 : -1;
+        }
+        if (v.crossing) {
+            return -compare(v, u, px, py, qx, qy);
+        }
+        // two points on the line
+        return px != qx ? Double.compare(u.x, v.x) * (px < qx ? 1 : -1) : Double.compare(u.y, v.y) * (py < qy ? 1 : -1);
+    }
+
+    /**
+     * Where a position is, roughly (for reporting it)
+     */
+    private static double[] approximate(Position position, double px, double py, double qx, double qy) {
+        if (!position.crossing) {
+            return new double[]{position.x, position.y};
+        }
+        double a = (position.x - px) * (position.toY - py) - (position.y - py) * (position.toX - px);
+        double b = (position.x - qx) * (position.toY - qy) - (position.y - qy) * (position.toX - qx);
+        double t = a / (a - b);
+        return new double[]{px + t * (qx - px), py + t * (qy - py)};
+    }
+
+    /**
+     * Check a solution file: java -cp Cover.jar geo.CoverValidator -file=instance.json [-solution=...]
+     */
+    public static void main(String[] args) {
+        Options options = new Options();
+
+        Option file = new Option("file", "file", true,
+                "Problem instance file.");
+        file.setRequired(true);
+        file.setType(String.class);
+        options.addOption(file);
+
+        Option solution = new Option("solution", "solution", true,
+                "Solution file to check (by default, the one saved next to the instance file).");
+        solution.setRequired(false);
+        solution.setType(String.class);
+        options.addOption(solution);
+
+        Option threads = new Option("threads", "threads", true,
+                "Number of threads checking pieces in parallel (by default, one per processor).");
+        threads.setRequired(false);
+        threads.setType(Number.class);
+        options.addOption(threads);
+
+        CommandLineParser parser = new DefaultParser();
+        HelpFormatter formatter = new HelpFormatter();
+        CommandLine cmd = null;
+
+        try {
+            cmd = parser.parse(options, args);
+        } catch (ParseException e) {
+            System.err.println(e.getMessage());
+            formatter.printHelp("utility-name", options);
+            System.exit(1);
+        }
+
+        String instanceFile = cmd.getOptionValue("file");
+        File solutionFile = cmd.hasOption("solution") ? new File(cmd.getOptionValue("solution")) : Solution.solutionFile(instanceFile);
+        int threadCount = cmd.hasOption("threads") ?
+                Integer.parseInt(cmd.getOptionValue("threads")) :
+                Runtime.getRuntime().availableProcessors();
+        try {
+            PolygonWithHoles polygon = PolygonWithHoles.parseInstanceFile(instanceFile);
+            List<Point[]> cover = Solution.readRings(solutionFile, Solution.instanceName(instanceFile));
+            long start = System.nanoTime();
+            List<String> problems = validate(polygon, cover, threadCount);
+            double seconds = (System.nanoTime() - start) / 1e9;
+            if (problems.isEmpty()) {
+                System.out.printf(Locale.ROOT, "The cover with %d pieces in %s is valid (checked in %.2f s)%n", cover.size(), solutionFile, seconds);
+                return;
+            }
+            System.out.printf(Locale.ROOT, "The cover with %d pieces in %s is not valid (checked in %.2f s):%n", cover.size(), solutionFile, seconds);
+            for (int i = 0; i < Math.min(problems.size(), MAX_REPORTED); i++) {
+                System.out.println("  " + problems.get(i));
+            }
+            if (problems.size() > MAX_REPORTED) {
+                System.out.println("  and " + (problems.size() - MAX_REPORTED) + " more problems");
+            }
+        } catch (IOException e) {
+            System.err.println("Could not read the instance or the solution: " + e.getMessage());
+        }
+        System.exit(1);
+    }
+}
@@ -0,0 +1,226 @@
+package geo;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/**
+ * A nice to look at picture of polygons, scaled to fit an image of the given size, each polygon filled with a
+ * translucent color of its own (or gray) and outlined in black. The bounds of the polygons are computed once, in
+ * double precision, and the polygons are sorted into bands of BAND_HEIGHT rows: a PNG is drawn and compressed band by
+ * band (in parallel, if given a pool of threads) and streamed to the file in order (see PngWriter), so that only a
+ * few bands are ever in memory, however large the image. An SVG is written polygon by polygon, with the exact
+ * coordinates.
+ */
+final class Drawing {
+
+    private static final int BAND_HEIGHT = 64; // rows of pixels drawn at a time
+    private static final Color TRANSLUCENT_GRAY = new Color(125, 125, 125, 128);
+
+    private final List<? extends PolygonWithHoles> polygons;
+    private final int width, height;
+    private final boolean monochrome;
+    private final double minX, minY, scale;
+    private final int[][] bands; // for each band, the indices of the polygons reaching into it, in drawing order
+
+    Drawing(List<? extends PolygonWithHoles> polygons, int width, int height, boolean monochrome) {
+        this.polygons = polygons;
+        this.width = width;
+        this.height = height;
+        this.monochrome = monochrome;
+
+        // the holes are within the outer boundaries, so these are enough for the bounds
+        double minX = Double.POSITIVE_INFINITY, minY = Double.POSITIVE_INFINITY;
+        double maxX = Double.NEGATIVE_INFINITY, maxY = Double.NEGATIVE_INFINITY;
+        for (PolygonWithHoles polygon : polygons) {
+            for (Point point : polygon.outerBoundary) {
+                minX = Math.min(minX, point.x);
+                minY = Math.min(minY, point.y);
+                maxX = Math.max(maxX, point.x);
+                maxY = Math.max(maxY, point.y);
+            }
+        }
+        if (minX > maxX) {
+            minX = minY = maxX = maxY = 0; // nothing to draw
+        }
+        this.minX = minX;
+        this.minY = minY;
+        // Determine the scaling factor to fit the polygons on the image
+        double scale = Math.min(width / (maxX - minX), height / (maxY - minY));
+        this.scale = Double.isInfinite(scale) ? 1 : scale;
+
+        int count = (height + BAND_HEIGHT - 1) / BAND_HEIGHT;
+        int[] first = new int[polygons.size()], last = new int[polygons.size()], sizes = new int[count];
+        for (int i = 0; i < polygons.size(); i++) {
+            int top = Integer.MAX_VALUE, bottom = Integer.MIN_VALUE;
+            for (Point point : polygons.get(i).outerBoundary) {
+                int y = pixel(point.y, minY);
+                top = Math.min(top, y);
+                bottom = Math.max(bottom, y);
+            }
+            // one more row on each side for the outline
+            first[i] = Math.max(0, (top - 1) / BAND_HEIGHT);
+            last[i] = Math.min(count - 1, (bottom + 1) / BAND_HEIGHT);
+            for (int band = first[i]; band <= last[i]; band++) {
+                sizes[band]++;
+            }
+        }
+        bands = new int[count][];
+        for (int band = 0; band < count; band++) {
+            bands[band] = new int[sizes[band]];
+            sizes[band] = 0;
+        }
+        for (int i = 0; i < polygons.size(); i++) {
+            for (int band = first[i]; band <= last[i]; band++) {
+                bands[band][sizes[band]++] = i;
+            }
+        }
+    }
+
+    /**
+     * Save the picture as a PNG, the bands being drawn by the given pool of @param threads threads (at most two
+     * bands per thread at a time), or by the calling thread if @param pool is null
+     */
+    void writePng(File file, ExecutorService pool, int threads) throws IOException {
+        try (PngWriter png = new PngWriter(new FileOutputStream(file), width, height)) {
+            if (pool == null) {
+                for (int band = 0; band < bands.length; band++) {
+                    png.write(band(band));
+                }
+                return;
+            }
+            Deque<Future<PngWriter.Band>> pending = new ArrayDeque<>();
+            try {
+                int next = 0;
+                while (next < bands.length || !pending.isEmpty()) {
+                    while (next < bands.length && pending.size() < 2 * threads) {
+                        int band = next++;
+                        pending.add(pool.submit(() -> band(band)));
+                    }
+                    png.write(pending.remove().get());
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while drawing " + file);
+            } catch (ExecutionException e) {
+                throw new IllegalStateException("Could not draw " + file, e.getCause());
+            } finally {
+                for (Future<PngWriter.Band> band : pending) {
+                    band.cancel(false);
+                }
+            }
+        }
+    }
+
+    /**
+     * Save the picture as an SVG of the same size and framing as the PNG, in the coordinates of the polygons
+     */
+    void writeSvg(File file) throws IOException {
+        try (Writer svg = Files.newBufferedWriter(file.toPath(), StandardCharsets.UTF_8)) {
+            String x = number(minX), y = number(minY), w = number(width / scale), h = number(height / scale);
+            svg.write("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n");
+            svg.write("<svg xmlns=\"http://www.w3.org/2000/svg\" width=\"" + width + "\" height=\"" + height +
+                    "\" viewBox=\"" + x + " " + y + " " + w + " " + h + "\">\n");
+            svg.write("<rect x=\"" + x + "\" y=\"" + y + "\" width=\"" + w + "\" height=\"" + h + "\" fill=\"white\"/>\n");
+            StringBuilder path = new StringBuilder();
+            for (PolygonWithHoles polygon : polygons) {
+                path.setLength(0);
+                ring(path, polygon.outerBoundary);
+                for (Point[] hole : polygon.holes) {
+                    ring(path, hole);
+                }
+                Color color = color(polygon);
+                svg.write(String.format("<path d=\"%s\" fill=\"#%06x\" fill-opacity=\"0.5\" fill-rule=\"evenodd\" " +
+                        "stroke=\"black\" vector-effect=\"non-scaling-stroke\"/>\n", path, color.getRGB() & 0xffffff));
+            }
+            svg.write("</svg>\n");
+        }
+    }
+
+    /**
+     * Draw a band and compress it
+     */
+    private PngWriter.Band band(int band) {
+        int top = band * BAND_HEIGHT, rows = Math.min(BAND_HEIGHT, height - top);
+        BufferedImage image = new BufferedImage(width, rows, BufferedImage.TYPE_INT_RGB);
+        Graphics2D g = image.createGraphics();
+        g.setColor(Color.white);
+        g.fillRect(0, 0, width, rows);
+        g.translate(0, -top);
+        for (int i : bands[band]) {
+            PolygonWithHoles polygon = polygons.get(i);
+            int[] xPoints = new int[polygon.outerBoundary.length];
+            int[] yPoints = new int[polygon.outerBoundary.length];
+            toPixels(polygon.outerBoundary, xPoints, yPoints);
+            g.setColor(color(polygon));
+            g.fillPolygon(xPoints, yPoints, xPoints.length);
+            g.setColor(Color.BLACK);
+            g.drawPolygon(xPoints, yPoints, xPoints.length);
+
+            for (Point[] hole : polygon.holes) {
+                xPoints = new int[hole.length];
+                yPoints = new int[hole.length];
+                toPixels(hole, xPoints, yPoints);
+                g.setColor(Color.white);
+                g.fillPolygon(xPoints, yPoints, xPoints.length);
+                g.setColor(Color.BLACK);
+                g.drawPolygon(xPoints, yPoints, xPoints.length);
+            }
+        }
+        g.dispose();
+        return PngWriter.compress(((DataBufferInt) image.getRaster().getDataBuffer()).getData(), width, rows);
+    }
+
+    /**
+     * A pseudo-random color based on the polygon's hashcode, or gray
+     */
+    private Color color(PolygonWithHoles polygon) {
+        if (monochrome) {
+            return TRANSLUCENT_GRAY;
+        }
+        int colorCode = polygon.hashCode();
+        return new Color((colorCode & 0xFF0000) >> 16, (colorCode & 0x00FF00) >> 8, colorCode & 0x0000FF, 128);
+    }
+
+    private void toPixels(Point[] ring, int[] xPoints, int[] yPoints) {
+        for (int i = 0; i < ring.length; i++) {
+            xPoints[i] = pixel(ring[i].x, minX);
+            yPoints[i] = pixel(ring[i].y, minY);
+        }
+    }
+
+    private int pixel(double coordinate, double min) {
+        return (int) ((coordinate - min) * scale);
+    }
+
+    private static void ring(StringBuilder path, Point[] ring) {
+        for (int i = 0; i < ring.length; i++) {
+            path.append(i == 0 ? "M" : " L").append(number(ring[i].x)).append(' ').append(number(ring[i].y));
+        }
+        path.append(" Z ");
+    }
+
+    /**
+     * A coordinate as an SVG number, without a fractional part when it has none
+     */
+    private static String number(double value) {
+        if (value == Math.rint(value) && Math.abs(value) < 0x1p63) {
+            return Long.toString((long) value);
+        }
+        return Double.toString(value);
+    }
+}
@@ -0,0 +1,321 @@
+package geo;
+
+import java.nio.ByteBuffer;
+import java.util.List;
+
+/**
+ * Uniform grid over the edges of a polygon (all of its rings). Every edge is registered in each cell its bounding
+ * box overlaps, so point-location and containment queries only look at the edges close to the query instead of
+ * walking the whole boundary. The edges are stored as packed coordinates and queried with the predicates of
+ * Geometry, so queries allocate nothing. The index is immutable once built and can be shared between threads.
+ */
+public class EdgeIndex {
+
+    private final double[] edges; // edge e goes from (edges[4e], edges[4e+1]) to (edges[4e+2], edges[4e+3])
+    private final double minX, minY;
+    private final double cellWidth, cellHeight;
+    private final int columns, rows;
+    private final int[] cellStart; // edges of cell c are cellEdges[cellStart[c]] ... cellEdges[cellStart[c+1]-1]
+    private final int[] cellEdges;
+
+    // Outcomes of a containment check: the convex polygon is contained, or the first reason found why it is not
+    static final int CONTAINED = 0, VERTEX_OUTSIDE = 1, BOUNDARY_VERTEX_INSIDE = 2, BOUNDARY_MIDPOINT_INSIDE = 3;
+
+    interface Visitor {
+        /**
+         * @return false to stop the visit
+         */
+        boolean visit(double x1, double y1, double x2, double y2);
+    }
+
+    public EdgeIndex(List<Edge> edges) {
+        this.edges = new double[4 * edges.size()];
+        double minX = Double.POSITIVE_INFINITY, minY = Double.POSITIVE_INFINITY;
+        double maxX = Double.NEGATIVE_INFINITY, maxY = Double.NEGATIVE_INFINITY;
+        for (int e = 0; e < edges.size(); e++) {
+            Edge edge = edges.get(e);
+            this.edges[4*e] = edge.p1.x;
+            this.edges[4*e+1] = edge.p1.y;
+            this.edges[4*e+2] = edge.p2.x;
+            this.edges[4*e+3] = edge.p2.y;
+            minX = Math.min(minX, Math.min(edge.p1.x, edge.p2.x));
+            minY = Math.min(minY, Math.min(edge.p1.y, edge.p2.y));
+            maxX = Math.max(maxX, Math.max(edge.p1.x, edge.p2.x));
+            maxY = Math.max(maxY, Math.max(edge.p1.y, edge.p2.y));
+        }
+        if (edges.isEmpty()) {
+            minX = minY = maxX = maxY = 0;
+        }
+        this.minX = minX;
+        this.minY = minY;
+
+        // roughly one cell per edge, with the cells following the aspect ratio of the bounding box
+        double width = Math.max(maxX - minX, Double.MIN_NORMAL);
+        double height = Math.max(maxY - minY, Double.MIN_NORMAL);
+        int n = Math.max(1, edges.size());
+        this.columns = (int) Math.max(1, Math.min(n, Math.round(Math.sqrt(n * width / height))));
+        this.rows = (int) Math.max(1, Math.min(n, Math.round((double) n / columns)));
+        this.cellWidth = width / columns;
+        this.cellHeight = height / rows;
+
+        // two passes: count the edges per cell, then fill them in
+        cellStart = new int[columns * rows + 1];
+        for (int e = 0; e < edges.size(); e++) {
+            for (int r = row(minY(e)); r <= row(maxY(e)); r++) {
+                for (int c = column(minX(e)); c <= column(maxX(e)); c++) {
+                    cellStart[r * columns + c + 1]++;
+                }
+            }
+        }
+        for (int c = 0; c < columns * rows; c++) {
+            cellStart[c + 1] += cellStart[c];
+        }
+        cellEdges = new int[cellStart[columns * rows]];
+        int[] fill = new int[columns * rows];
+        for (int e = 0; e < edges.size(); e++) {
+            for (int r = row(minY(e)); r <= row(maxY(e)); r++) {
+                for (int c = column(minX(e)); c <= column(maxX(e)); c++) {
+                    int cell = r * columns + c;
+                    cellEdges[cellStart[cell] + fill[cell]++] = e;
+                }
+            }
+        }
+    }
+
+    private EdgeIndex(double[] edges, double minX, double minY, double cellWidth, double cellHeight, int columns,
+                      int rows, int[] cellStart, int[] cellEdges) {
+        this.edges = edges;
+        this.minX = minX;
+        this.minY = minY;
+        this.cellWidth = cellWidth;
+        this.cellHeight = cellHeight;
+        this.columns = columns;
+        this.rows = rows;
+        this.cellStart = cellStart;
+        this.cellEdges = cellEdges;
+    }
+
+    /**
+     * Number of bytes write needs
+     */
+    int serializedSize() {
+        return 4 * Double.BYTES + 4 * Integer.BYTES + edges.length * Double.BYTES +
+               (cellStart.length + cellEdges.length) * Integer.BYTES;
+    }
+
+    /**
+     * Save the index (as is, so that reading it back does not redo any of the work) at the position of the buffer
+     */
+    void write(ByteBuffer buffer) {
+        buffer.putDouble(minX).putDouble(minY).putDouble(cellWidth).putDouble(cellHeight);
+        buffer.putInt(columns).putInt(rows).putInt(edges.length / 4).putInt(cellEdges.length);
+        buffer.asDoubleBuffer().put(edges);
+        buffer.position(buffer.position() + edges.length * Double.BYTES);
+        buffer.asIntBuffer().put(cellStart).put(cellEdges);
+        buffer.position(buffer.position() + (cellStart.length + cellEdges.length) * Integer.BYTES);
+    }
+
+    /**
+     * Read back an index saved by write, from the position of the buffer
+     */
+    static EdgeIndex read(ByteBuffer buffer) {
+        double minX = buffer.getDouble(), minY = buffer.getDouble();
+        double cellWidth = buffer.getDouble(), cellHeight = buffer.getDouble();
+        int columns = buffer.getInt(), rows = buffer.getInt();
+        int edgeCount = InstanceCache.readCount(buffer, 4 * Double.BYTES);
+        int cellEdgeCount = InstanceCache.readCount(buffer, Integer.BYTES);
+        long cells = (long) columns * rows;
+        if (columns < 1 || rows < 1 ||
+                4L * Double.BYTES * edgeCount + Integer.BYTES * (cells + 1 + cellEdgeCount) > buffer.remaining()) {
+            throw new IllegalArgumentException("Edge index beyond the end of the buffer");
+        }
+        double[] edges = new double[4 * edgeCount];
+        int[] cellStart = new int[(int) cells + 1];
+        int[] cellEdges = new int[cellEdgeCount];
+        buffer.asDoubleBuffer().get(edges);
+        buffer.position(buffer.position() + edges.length * Double.BYTES);
+        buffer.asIntBuffer().get(cellStart).get(cellEdges);
+        buffer.position(buffer.position() + (cellStart.length + cellEdges.length) * Integer.BYTES);
+        return new EdgeIndex(edges, minX, minY, cellWidth, cellHeight, columns, rows, cellStart, cellEdges);
+    }
+
+    private double minX(int e) {
+        return Math.min(edges[4*e], edges[4*e+2]);
+    }
+
+    private double minY(int e) {
+        return Math.min(edges[4*e+1], edges[4*e+3]);
+    }
+
+    private double maxX(int e) {
+        return Math.max(edges[4*e], edges[4*e+2]);
+    }
+
+    private double maxY(int e) {
+        return Math.max(edges[4*e+1], edges[4*e+3]);
+    }
+
+    private int column(double x) {
+        return Math.max(0, Math.min(columns - 1, (int) Math.floor((x - minX) / cellWidth)));
+    }
+
+    private int row(double y) {
+        return Math.max(0, Math.min(rows - 1, (int) Math.floor((y - minY) / cellHeight)));
+    }
+
+    /**
+     * An edge is registered in several cells; report it only from the first cell (lowest row, then lowest column)
+     * it shares with the query range, so that every edge is looked at once per query.
+     */
+    private boolean isFirstCell(int e, int column, int row, int fromColumn, int fromRow) {
+        return Math.max(fromColumn, column(minX(e))) == column && Math.max(fromRow, row(minY(e))) == row;
+    }
+
+    public boolean isOnBoundary(Point point) {
+        return isOnBoundary(point.x, point.y);
+    }
+
+    boolean isOnBoundary(double x, double y) {
+        // the cells of an edge include the cell of any point on it
+        int cell = row(y) * columns + column(x);
+        for (int k = cellStart[cell]; k < cellStart[cell + 1]; k++) {
+            int e = cellEdges[k];
+            if (Predicates.onSegment(x, y, edges[4*e], edges[4*e+1], edges[4*e+2], edges[4*e+3])) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Figure out if the point is strictly inside the polygon by counting crossings between a ray going right from
+     * the point and the boundary. Only the cells of the row containing the point (to the right of it) are visited.
+     * An edge is counted if it straddles the ray in the half-open sense, which takes care of rays through vertices
+     * and along horizontal edges, and the side of the point is decided by an exact orientation test.
+     */
+    public boolean isInside(Point point) {
+        return isInside(point.x, point.y);
+    }
+
+    boolean isInside(double x, double y) {
+        if (isOnBoundary(x, y)) {
+            return false;
+        }
+        int r = row(y);
+        int c0 = column(x);
+        boolean inside = false;
+        for (int c = c0; c < columns; c++) {
+            int cell = r * columns + c;
+            for (int k = cellStart[cell]; k < cellStart[cell + 1]; k++) {
+                int e = cellEdges[k];
+                double x1 = edges[4*e], y1 = edges[4*e+1], x2 = edges[4*e+2], y2 = edges[4*e+3];
+                if (!isFirstCell(e, c, r, c0, r) || (y1 > y) == (y2 > y)) {
+                    continue;
+                }
+                // an edge going up crosses the ray if the point is on its left, an edge going down if on its right
+                if ((Predicates.orientation(x1, y1, x2, y2, x, y) > 0) == (y2 > y1)) {
+                    inside = !inside;
+                }
+            }
+        }
+        return inside;
+    }
+
+    /**
+     * Check that a convex polygon lies within the indexed polygon: all of its vertices have to be inside or on
+     * the boundary, and no vertex or edge midpoint of the indexed polygon may lie strictly inside of it. Only the
+     * edges whose cells overlap the bounding box of the convex polygon are looked at for the second part.
+     */
+    public boolean contains(ConvexPolygon polygon) {
+        return containment(polygon) == CONTAINED;
+    }
+
+    /**
+     * Same check as contains, telling why the convex polygon is not contained (CONTAINED if it is)
+     */
+    int containment(ConvexPolygon polygon) {
+        double[] vertices = polygon.coordinates;
+        for (int i = 0; i < vertices.length; i += 2) {
+            if (!isOnBoundary(vertices[i], vertices[i+1]) && !isInside(vertices[i], vertices[i+1])) {
+                return VERTEX_OUTSIDE;
+            }
+        }
+        return findBoundaryStrictlyInside(polygon, polygon.minX, polygon.minY, polygon.maxX, polygon.maxY);
+    }
+
+    /**
+     * Look for a vertex or edge midpoint of the indexed polygon strictly inside the convex polygon, only among the
+     * edges whose cells overlap the given box (which must contain the part of the convex polygon the caller is
+     * interested in). Returns BOUNDARY_VERTEX_INSIDE or BOUNDARY_MIDPOINT_INSIDE if one is found, CONTAINED if not.
+     */
+    int findBoundaryStrictlyInside(ConvexPolygon polygon, double minX, double minY, double maxX, double maxY) {
+        int c0 = column(minX), c1 = column(maxX);
+        int r0 = row(minY), r1 = row(maxY);
+        for (int r = r0; r <= r1; r++) {
+            for (int c = c0; c <= c1; c++) {
+                int cell = r * columns + c;
+                for (int k = cellStart[cell]; k < cellStart[cell + 1]; k++) {
+                    int e = cellEdges[k];
+                    if (!isFirstCell(e, c, r, c0, r0)) {
+                        continue;
+                    }
+                    double x1 = edges[4*e], y1 = edges[4*e+1], x2 = edges[4*e+2], y2 = edges[4*e+3];
+                    // every vertex starts exactly one edge of its ring, so this looks at each vertex once
+                    if (polygon.strictlyContains(x1, y1)) {
+                        return BOUNDARY_VERTEX_INSIDE;
+                    }
+                    if (polygon.strictlyContains((x1 + x2)/2, (y1 + y2)/2)) {
+                        return BOUNDARY_MIDPOINT_INSIDE;
+                    }
+                }
+            }
+        }
+        return CONTAINED;
+    }
+
+    /**
+     * Visit the edges whose cells overlap the given box, each of them once
+     * @return false if the visitor stopped the visit
+     */
+    boolean visit(double minX, double minY, double maxX, double maxY, Visitor visitor) {
+        int c0 = column(minX), c1 = column(maxX);
+        int r0 = row(minY), r1 = row(maxY);
+        for (int r = r0; r <= r1; r++) {
+            for (int c = c0; c <= c1; c++) {
+                int cell = r * columns + c;
+                for (int k = cellStart[cell]; k < cellStart[cell + 1]; k++) {
+                    int e = cellEdges[k];
+                    if (isFirstCell(e, c, r, c0, r0) && !visitor.visit(edges[4*e], edges[4*e+1], edges[4*e+2], edges[4*e+3])) {
+                        return false;
+                    }
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Check if the segment crosses any edge of the polygon (touching an edge at an endpoint does not count).
+     */
+    public boolean crosses(Edge segment) {
+        return crosses(segment.p1.x, segment.p1.y, segment.p2.x, segment.p2.y);
+    }
+
+    boolean crosses(double x1, double y1, double x2, double y2) {
+        int c0 = column(Math.min(x1, x2)), c1 = column(Math.max(x1, x2));
+        int r0 = row(Math.min(y1, y2)), r1 = row(Math.max(y1, y2));
+        for (int r = r0; r <= r1; r++) {
+            for (int c = c0; c <= c1; c++) {
+                int cell = r * columns + c;
+                for (int k = cellStart[cell]; k < cellStart[cell + 1]; k++) {
+                    int e = cellEdges[k];
+                    if (isFirstCell(e, c, r, c0, r0) &&
+                            Predicates.intersect(edges[4*e], edges[4*e+1], edges[4*e+2], edges[4*e+3], x1, y1, x2, y2, false)) {
+                        return true;
+                    }
+                }
+            }
+        }
+        return false;
+    }
+}
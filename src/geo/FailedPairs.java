@@ -0,0 +1,130 @@
+package geo;
+
+import java.util.Arrays;
+import java.util.BitSet;
+
+/**
+ * Pairs of pieces of a CoverGraph that are known not to merge, so that drawing such a pair again costs a single
+ * lookup instead of building and checking their hull once more. As ids are never reused, a pair stays failed for as
+ * long as both of its pieces are in the cover; once a piece is merged away its pairs are no longer counted, and they
+ * are dropped from the table the next time it is rebuilt.
+ * Pairs are kept in an open-addressing table of longs (the two ids packed, smallest first). Each id also keeps the
+ * ids it failed with, so that the number of failed pairs among the pieces in the cover is known at all times.
+ */
+final class FailedPairs {
+
+    private static final long EMPTY = -1;
+    private static final int MIN_CAPACITY = 64;
+
+    private long[] table = emptyTable(MIN_CAPACITY);
+    private int entries = 0; // pairs in the table, including those of retired pieces
+    private long size = 0; // pairs whose pieces are both in the cover
+    private int[][] partners = new int[16][]; // ids each id failed with, null once retired
+    private int[] partnerCount = new int[16];
+    private final BitSet retired = new BitSet();
+
+    /**
+     * Number of failed pairs among the pieces in the cover
+     */
+    long size() {
+        return size;
+    }
+
+    boolean contains(int first, int second) {
+        long key = key(first, second);
+        for (int slot = slot(key, table.length); table[slot] != EMPTY; slot = (slot + 1) & (table.length - 1)) {
+            if (table[slot] == key) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Record that two pieces in the cover cannot be merged (the pair must not be recorded already)
+     */
+    void add(int first, int second) {
+        if (2 * (entries + 1) > table.length) {
+            rebuild();
+        }
+        insert(table, key(first, second));
+        entries++;
+        size++;
+        addPartner(first, second);
+        addPartner(second, first);
+    }
+
+    /**
+     * The piece has been merged into another one: its pairs no longer count
+     */
+    void retire(int id) {
+        retired.set(id);
+        if (id >= partners.length || partners[id] == null) {
+            return;
+        }
+        for (int k = 0; k < partnerCount[id]; k++) {
+            if (!retired.get(partners[id][k])) {
+                size--;
+            }
+        }
+        partners[id] = null;
+        partnerCount[id] = 0;
+    }
+
+    private void addPartner(int id, int partner) {
+        if (id >= partners.length) {
+            int length = Math.max(2 * partners.length, id + 1);
+            partners = Arrays.copyOf(partners, length);
+            partnerCount = Arrays.copyOf(partnerCount, length);
+        }
+        if (partners[id] == null) {
+            partners[id] = new int[4];
+        } else if (partnerCount[id] == partners[id].length) {
+            partners[id] = Arrays.copyOf(partners[id], 2 * partners[id].length);
+        }
+        partners[id][partnerCount[id]++] = partner;
+    }
+
+    /**
+     * Rehash the pairs of pieces still in the cover into a table with room for as many again, dropping the others
+     */
+    private void rebuild() {
+        int capacity = MIN_CAPACITY;
+        while (capacity < 4 * (size + 1)) {
+            capacity *= 2;
+        }
+        long[] rebuilt = emptyTable(capacity);
+        int kept = 0;
+        for (long key : table) {
+            if (key != EMPTY && !retired.get((int) (key >>> 32)) && !retired.get((int) key)) {
+                insert(rebuilt, key);
+                kept++;
+            }
+        }
+        table = rebuilt;
+        entries = kept;
+    }
+
+    private static void insert(long[] table, long key) {
+        int slot = slot(key, table.length);
+        while (table[slot] != EMPTY) {
+            slot = (slot + 1) & (table.length - 1);
+        }
+        table[slot] = key;
+    }
+
+    private static long key(int first, int second) {
+        return ((long) Math.min(first, second) << 32) | Math.max(first, second);
+    }
+
+    private static int slot(long key, int capacity) {
+        // Fibonacci hashing: the high bits of the product depend on all the bits of the key
+        return (int) ((key * 0x9E3779B97F4A7C15L) >>> (64 - Integer.numberOfTrailingZeros(capacity)));
+    }
+
+    private static long[] emptyTable(int capacity) {
+        long[] table = new long[capacity];
+        Arrays.fill(table, EMPTY);
+        return table;
+    }
+}
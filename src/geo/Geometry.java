@@ -0,0 +1,72 @@
+package geo;
+
+/**
+ * Geometry on plain coordinates. Points, edges and polygons are convenient to pass around, but the inner loops of
+ * containment checks and triangulation run millions of times, so they work directly on doubles (and on rings
+ * stored as packed coordinate arrays x0, y0, x1, y1, ...) and allocate nothing. Decisions are left to Predicates.
+ */
+final class Geometry {
+
+    private Geometry() {
+    }
+
+    /**
+     * Coordinates of the intersection of the lines through the two segments (which must not be parallel)
+     */
+    static double intersectionX(double x1, double y1, double x2, double y2,
+                                double x3, double y3, double x4, double y4) {
+        double den = (x1-x2)*(y3-y4) - (y1-y2)*(x3-x4);
+        return ((x1*y2-y1*x2)*(x3-x4) - (x1-x2)*(x3*y4-y3*x4))/den;
+    }
+
+    static double intersectionY(double x1, double y1, double x2, double y2,
+                                double x3, double y3, double x4, double y4) {
+        double den = (x1-x2)*(y3-y4) - (y1-y2)*(x3-x4);
+        return ((x1*y2-y1*x2)*(y3-y4) - (y1-y2)*(x3*y4-y3*x4))/den;
+    }
+
+    /**
+     * Pack the coordinates of a ring of points into one array
+     */
+    static double[] pack(Point[] ring) {
+        double[] coordinates = new double[2 * ring.length];
+        for (int i = 0; i < ring.length; i++) {
+            coordinates[2*i] = ring[i].x;
+            coordinates[2*i+1] = ring[i].y;
+        }
+        return coordinates;
+    }
+
+    /**
+     * Check if the point lies on the boundary of the packed ring
+     */
+    static boolean isOnRing(double[] ring, double px, double py) {
+        int n = ring.length;
+        for (int i = 0; i < n; i += 2) {
+            int j = (i + 2) % n;
+            if (Predicates.onSegment(px, py, ring[i], ring[i+1], ring[j], ring[j+1])) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Crossing-number test of a point against the packed ring, counting the edges that a ray going right from the
+     * point crosses. An edge counts if it straddles the ray in the half-open sense, which takes care of rays
+     * through vertices and along horizontal edges. Points on the boundary may come out either way.
+     */
+    static boolean isInsideRing(double[] ring, double px, double py) {
+        int n = ring.length;
+        boolean inside = false;
+        for (int i = 0; i < n; i += 2) {
+            int j = (i + 2) % n;
+            double x1 = ring[i], y1 = ring[i+1], x2 = ring[j], y2 = ring[j+1];
+            // an edge going up crosses the ray if the point is on its left, an edge going down if it is on its right
+            if ((y1 > py) != (y2 > py) && (Predicates.orientation(x1, y1, x2, y2, px, py) > 0) == (y2 > y1)) {
+                inside = !inside;
+            }
+        }
+        return inside;
+    }
+}
@@ -0,0 +1,89 @@
+package geo;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Uniform grid of items that can be added and removed as an algorithm goes, each registered in the cells its
+ * bounding box overlaps. Unlike EdgeIndex, which is built once for a fixed set of edges, this is meant for the
+ * changing rings of the triangulation and hole bridging procedures.
+ */
+class Grid<T> {
+
+    interface Visitor<T> {
+        /**
+         * @return false to stop the visit
+         */
+        boolean visit(T item);
+    }
+
+    private final double minX, minY;
+    private final double cellWidth, cellHeight;
+    private final int columns, rows;
+    private final List<List<T>> cells;
+
+    /**
+     * A grid covering the given box with roughly the given number of cells. Items outside the box end up in the
+     * cells along its border.
+     */
+    Grid(double minX, double minY, double maxX, double maxY, int cellCount) {
+        this.minX = minX;
+        this.minY = minY;
+        double width = Math.max(maxX - minX, Double.MIN_NORMAL);
+        double height = Math.max(maxY - minY, Double.MIN_NORMAL);
+        int n = Math.max(1, cellCount);
+        this.columns = (int) Math.max(1, Math.min(n, Math.round(Math.sqrt(n * width / height))));
+        this.rows = (int) Math.max(1, Math.min(n, Math.round((double) n / columns)));
+        this.cellWidth = width / columns;
+        this.cellHeight = height / rows;
+        cells = new ArrayList<>(columns * rows);
+        for (int c = 0; c < columns * rows; c++) {
+            cells.add(new ArrayList<>(2));
+        }
+    }
+
+    int column(double x) {
+        return Math.max(0, Math.min(columns - 1, (int) Math.floor((x - minX) / cellWidth)));
+    }
+
+    int row(double y) {
+        return Math.max(0, Math.min(rows - 1, (int) Math.floor((y - minY) / cellHeight)));
+    }
+
+    void add(T item, double minX, double minY, double maxX, double maxY) {
+        for (int r = row(minY); r <= row(maxY); r++) {
+            for (int c = column(minX); c <= column(maxX); c++) {
+                cells.get(r * columns + c).add(item);
+            }
+        }
+    }
+
+    /**
+     * Remove an item, given the same box it was added with
+     */
+    void remove(T item, double minX, double minY, double maxX, double maxY) {
+        for (int r = row(minY); r <= row(maxY); r++) {
+            for (int c = column(minX); c <= column(maxX); c++) {
+                cells.get(r * columns + c).remove(item);
+            }
+        }
+    }
+
+    /**
+     * Visit the items of all the cells overlapping the given box. An item registered in several of those cells is
+     * visited once per cell.
+     * @return false if the visitor stopped the visit
+     */
+    boolean visit(double minX, double minY, double maxX, double maxY, Visitor<T> visitor) {
+        for (int r = row(minY); r <= row(maxY); r++) {
+            for (int c = column(minX); c <= column(maxX); c++) {
+                for (T item : cells.get(r * columns + c)) {
+                    if (!visitor.visit(item)) {
+                        return false;
+                    }
+                }
+            }
+        }
+        return true;
+    }
+}
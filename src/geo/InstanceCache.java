@@ -0,0 +1,192 @@
+package geo;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * On-disk cache of preprocessed instances, for solving the same instance again (with another seed, other options,
+ * ...) without redoing the work that comes before the reduction of the cover: parsing the instance, triangulating it
+ * and building its edge index. Entries are keyed by the SHA-256 of the instance file and the triangulator used, so an
+ * edited instance never hits a stale entry.
+ *
+ * An entry is a single binary file: a header (magic number and format version), the rings of the polygon, the
+ * triangles (in the order the triangulator produced them, so that a seeded run gives the same cover from the cache
+ * as without it), and the edge index as built. It is memory-mapped when read and its arrays are bulk-copied out.
+ * Entries are written to a temporary file and moved into place, so concurrent runs never see half-written ones.
+ */
+final class InstanceCache {
+
+    private static final int MAGIC = 0x43565243; // "CVRC"
+    private static final int VERSION = 1;
+
+    /**
+     * What the cache holds for an instance
+     */
+    static class Entry {
+        final PolygonWithHoles polygon;
+        final List<Triangle> triangles;
+
+        Entry(PolygonWithHoles polygon, List<Triangle> triangles) {
+            this.polygon = polygon;
+            this.triangles = triangles;
+        }
+    }
+
+    private final Path directory;
+
+    InstanceCache(String directory) throws IOException {
+        this.directory = Files.createDirectories(Paths.get(directory));
+    }
+
+    /**
+     * Key of the entry of the instance file triangulated with the given triangulator
+     */
+    static String key(String instanceFile, String triangulator) throws IOException {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e); // every JVM has SHA-256
+        }
+        byte[] buffer = new byte[1 << 16];
+        try (InputStream in = Files.newInputStream(Paths.get(instanceFile))) {
+            int read;
+            while ((read = in.read(buffer)) > 0) {
+                digest.update(buffer, 0, read);
+            }
+        }
+        StringBuilder key = new StringBuilder();
+        for (byte b : digest.digest()) {
+            key.append(String.format("%02x", b));
+        }
+        return key.append('-').append(triangulator).toString();
+    }
+
+    /**
+     * The entry with the given key, or null if there is none (or it is from another version of the format, or is
+     * corrupt)
+     */
+    Entry load(String key) throws IOException {
+        Path file = directory.resolve(key + ".bin");
+        if (!Files.isRegularFile(file)) {
+            return null;
+        }
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            buffer.order(ByteOrder.LITTLE_ENDIAN);
+            if (buffer.getInt() != MAGIC || buffer.getInt() != VERSION) {
+                return null;
+            }
+            Point[] outerBoundary = readRing(buffer);
+            Point[][] holes = new Point[readCount(buffer, Integer.BYTES)][];
+            for (int i = 0; i < holes.length; i++) {
+                holes[i] = readRing(buffer);
+            }
+            double[] coordinates = new double[6 * readCount(buffer, 6 * Double.BYTES)];
+            readDoubles(buffer, coordinates);
+            List<Triangle> triangles = new ArrayList<>(coordinates.length / 6);
+            for (int i = 0; i < coordinates.length; i += 6) {
+                triangles.add(new Triangle(new Point(coordinates[i], coordinates[i+1]),
+                        new Point(coordinates[i+2], coordinates[i+3]), new Point(coordinates[i+4], coordinates[i+5])));
+            }
+            EdgeIndex edgeIndex = EdgeIndex.read(buffer);
+            return new Entry(new PolygonWithHoles(outerBoundary, holes, edgeIndex), triangles);
+        } catch (BufferUnderflowException | IllegalArgumentException | IndexOutOfBoundsException |
+                 NegativeArraySizeException | ConvexPolygon.NotConvexException e) {
+            System.err.println("Ignoring the corrupt cache entry " + file);
+            return null;
+        }
+    }
+
+    /**
+     * Save the entry with the given key (replacing any previous one)
+     */
+    void store(String key, PolygonWithHoles polygon, List<Triangle> triangles) throws IOException {
+        EdgeIndex edgeIndex = polygon.edgeIndex();
+        long size = 3 * Integer.BYTES + ringSize(polygon.outerBoundary) + Integer.BYTES +
+                6L * Double.BYTES * triangles.size() + edgeIndex.serializedSize();
+        for (Point[] hole : polygon.holes) {
+            size += ringSize(hole);
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(Math.toIntExact(size)).order(ByteOrder.LITTLE_ENDIAN);
+        buffer.putInt(MAGIC).putInt(VERSION);
+        writeRing(buffer, polygon.outerBoundary);
+        buffer.putInt(polygon.holes.length);
+        for (Point[] hole : polygon.holes) {
+            writeRing(buffer, hole);
+        }
+        buffer.putInt(triangles.size());
+        for (Triangle triangle : triangles) {
+            for (Point point : triangle.outerBoundary) {
+                buffer.putDouble(point.x).putDouble(point.y);
+            }
+        }
+        edgeIndex.write(buffer);
+        buffer.flip();
+
+        Path temporary = Files.createTempFile(directory, key, ".tmp");
+        try {
+            try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.WRITE)) {
+                while (buffer.hasRemaining()) {
+                    channel.write(buffer);
+                }
+            }
+            Files.move(temporary, directory.resolve(key + ".bin"), StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temporary);
+        }
+    }
+
+    private static long ringSize(Point[] ring) {
+        return Integer.BYTES + 2L * Double.BYTES * ring.length;
+    }
+
+    private static void writeRing(ByteBuffer buffer, Point[] ring) {
+        buffer.putInt(ring.length);
+        for (Point point : ring) {
+            buffer.putDouble(point.x).putDouble(point.y);
+        }
+    }
+
+    /**
+     * Read the number of items that follow, each of the given size, checking that the buffer holds them, so that a
+     * corrupt count cannot allocate a huge array
+     */
+    static int readCount(ByteBuffer buffer, int itemBytes) {
+        int count = buffer.getInt();
+        if (count < 0 || (long) count * itemBytes > buffer.remaining()) {
+            throw new IllegalArgumentException("Count " + count + " beyond the end of the entry");
+        }
+        return count;
+    }
+
+    private static Point[] readRing(ByteBuffer buffer) {
+        double[] coordinates = new double[2 * readCount(buffer, 2 * Double.BYTES)];
+        readDoubles(buffer, coordinates);
+        Point[] ring = new Point[coordinates.length / 2];
+        for (int i = 0; i < ring.length; i++) {
+            ring[i] = new Point(coordinates[2*i], coordinates[2*i+1]);
+        }
+        return ring;
+    }
+
+    private static void readDoubles(ByteBuffer buffer, double[] values) {
+        buffer.asDoubleBuffer().get(values);
+        buffer.position(buffer.position() + values.length * Double.BYTES);
+    }
+}
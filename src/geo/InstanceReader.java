@@ -0,0 +1,298 @@
+package geo;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Reads instance files in the CG:SHOP format without building a JSON document: the bytes are scanned once, the
+ * coordinates of outer_boundary and holes go straight into arrays of doubles (packed as x0, y0, x1, y1, ...), and
+ * everything else is skipped. Files compressed with gzip (recognised by their first bytes, whatever their name) are
+ * decompressed on the fly.
+ */
+final class InstanceReader {
+
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    private final String file;
+    private final InputStream in;
+    private final byte[] buffer = new byte[BUFFER_SIZE];
+    private int position, limit;
+    private long consumed; // bytes before the buffer, for error messages
+    private final StringBuilder text = new StringBuilder();
+
+    private double[] outerBoundary;
+    private double[][] holes;
+
+    private InstanceReader(String file, InputStream in) {
+        this.file = file;
+        this.in = in;
+    }
+
+    static PolygonWithHoles read(String instanceFile) throws IOException {
+        try (InputStream raw = new BufferedInputStream(Files.newInputStream(Paths.get(instanceFile)), BUFFER_SIZE)) {
+            raw.mark(2);
+            boolean gzip = raw.read() == 0x1f && raw.read() == 0x8b;
+            raw.reset();
+            InstanceReader reader = new InstanceReader(instanceFile, gzip ? new GZIPInputStream(raw, BUFFER_SIZE) : raw);
+            reader.readInstance();
+            Point[][] holes = new Point[reader.holes.length][];
+            for (int i = 0; i < holes.length; i++) {
+                holes[i] = points(reader.holes[i]);
+            }
+            return new PolygonWithHoles(points(reader.outerBoundary), holes);
+        }
+    }
+
+    private static Point[] points(double[] coordinates) {
+        Point[] points = new Point[coordinates.length / 2];
+        for (int i = 0; i < points.length; i++) {
+            points[i] = new Point(coordinates[2*i], coordinates[2*i+1]);
+        }
+        return points;
+    }
+
+    private void readInstance() throws IOException {
+        expect('{');
+        if (!tryConsume('}')) {
+            do {
+                String key = readKey();
+                if (key.equals("outer_boundary")) {
+                    outerBoundary = readRing();
+                } else if (key.equals("holes")) {
+                    holes = readRings();
+                } else {
+                    skipValue();
+                }
+            } while (tryConsume(','));
+            expect('}');
+        }
+        if (outerBoundary == null) {
+            throw new IOException(file + " has no outer_boundary");
+        }
+        if (holes == null) {
+            holes = new double[0][];
+        }
+    }
+
+    /**
+     * An array of rings
+     */
+    private double[][] readRings() throws IOException {
+        double[][] rings = new double[8][];
+        int count = 0;
+        expect('[');
+        if (!tryConsume(']')) {
+            do {
+                if (count == rings.length) {
+                    rings = Arrays.copyOf(rings, 2 * count);
+                }
+                rings[count++] = readRing();
+            } while (tryConsume(','));
+            expect(']');
+        }
+        return Arrays.copyOf(rings, count);
+    }
+
+    /**
+     * An array of points {"x": .., "y": ..}, as packed coordinates
+     */
+    private double[] readRing() throws IOException {
+        double[] coordinates = new double[64];
+        int count = 0;
+        expect('[');
+        if (!tryConsume(']')) {
+            do {
+                if (count == coordinates.length) {
+                    coordinates = Arrays.copyOf(coordinates, 2 * count);
+                }
+                boolean hasX = false, hasY = false;
+                expect('{');
+                if (!tryConsume('}')) {
+                    do {
+                        String key = readKey();
+                        if (key.equals("x")) {
+                            coordinates[count] = readNumber();
+                            hasX = true;
+                        } else if (key.equals("y")) {
+                            coordinates[count+1] = readNumber();
+                            hasY = true;
+                        } else {
+                            skipValue();
+                        }
+                    } while (tryConsume(','));
+                    expect('}');
+                }
+                if (!hasX || !hasY) {
+                    throw error("a point with both x and y");
+                }
+                count += 2;
+            } while (tryConsume(','));
+            expect(']');
+        }
+        return Arrays.copyOf(coordinates, count);
+    }
+
+    private String readKey() throws IOException {
+        expect('"');
+        String key = readString();
+        expect(':');
+        return key;
+    }
+
+    /**
+     * The rest of a string whose opening quote has been read. Escapes other than unicode ones are kept as they are and
+     * bytes beyond ASCII are not decoded, which is enough to compare keys.
+     */
+    private String readString() throws IOException {
+        text.setLength(0);
+        int c;
+        while ((c = read()) != '"') {
+            if (c == -1) {
+                throw error("the end of a string");
+            }
+            if (c == '\\') {
+                c = read();
+                if (c == 'u') {
+                    c = Integer.parseInt("" + (char) read() + (char) read() + (char) read() + (char) read(), 16);
+                }
+            }
+            text.append((char) c);
+        }
+        return text.toString();
+    }
+
+    /**
+     * A number. Integers (all coordinates in the instances are) are accumulated straight from the bytes, anything
+     * else is left to Double.parseDouble.
+     */
+    private double readNumber() throws IOException {
+        skipWhitespace();
+        boolean negative = peek() == '-';
+        if (negative) {
+            position++;
+        }
+        long value = 0;
+        int digits = 0, c;
+        while ((c = peek()) >= '0' && c <= '9' && digits < 18) {
+            value = 10 * value + (c - '0');
+            digits++;
+            position++;
+        }
+        if (digits > 0 && (c == -1 || !isNumberCharacter(c))) {
+            return negative ? -value : value;
+        }
+        // a fraction, an exponent or too many digits
+        text.setLength(0);
+        if (negative) {
+            text.append('-');
+        }
+        if (digits > 0) {
+            text.append(value);
+        }
+        while ((c = peek()) != -1 && isNumberCharacter(c)) {
+            text.append((char) c);
+            position++;
+        }
+        try {
+            return Double.parseDouble(text.toString());
+        } catch (NumberFormatException e) {
+            throw error("a number instead of '" + text + "'");
+        }
+    }
+
+    private void skipValue() throws IOException {
+        skipWhitespace();
+        int c = peek();
+        if (c == '{') {
+            position++;
+            if (!tryConsume('}')) {
+                do {
+                    readKey();
+                    skipValue();
+                } while (tryConsume(','));
+                expect('}');
+            }
+        } else if (c == '[') {
+            position++;
+            if (!tryConsume(']')) {
+                do {
+                    skipValue();
+                } while (tryConsume(','));
+                expect(']');
+            }
+        } else if (c == '"') {
+            position++;
+            readString();
+        } else {
+            // number, true, false or null
+            int length = 0;
+            while ((c = peek()) != -1 && (isNumberCharacter(c) || (c >= 'a' && c <= 'z'))) {
+                position++;
+                length++;
+            }
+            if (length == 0) {
+                throw error("a value");
+            }
+        }
+    }
+
+    private static boolean isNumberCharacter(int c) {
+        return (c >= '0' && c <= '9') || c == '-' || c == '+' || c == '.' || c == 'e' || c == 'E';
+    }
+
+    private void expect(char expected) throws IOException {
+        if (!tryConsume(expected)) {
+            throw error("'" + expected + "'");
+        }
+    }
+
+    /**
+     * Consume the next non-whitespace character if it is the given one
+     */
+    private boolean tryConsume(char expected) throws IOException {
+        skipWhitespace();
+        if (peek() == expected) {
+            position++;
+            return true;
+        }
+        return false;
+    }
+
+    private void skipWhitespace() throws IOException {
+        int c;
+        while ((c = peek()) == ' ' || c == '\n' || c == '\r' || c == '\t') {
+            position++;
+        }
+    }
+
+    private int peek() throws IOException {
+        if (position == limit) {
+            consumed += limit;
+            position = 0;
+            limit = Math.max(in.read(buffer), 0);
+            if (limit == 0) {
+                return -1;
+            }
+        }
+        return buffer[position] & 0xff;
+    }
+
+    private int read() throws IOException {
+        int c = peek();
+        if (c != -1) {
+            position++;
+        }
+        return c;
+    }
+
+    private IOException error(String expected) throws IOException {
+        int c = peek();
+        return new IOException("Malformed instance file " + file + ": expected " + expected + " at byte " +
+                (consumed + position) + (c == -1 ? " (end of file)" : ", found '" + (char) c + "'"));
+    }
+}
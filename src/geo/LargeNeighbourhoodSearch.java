@@ -0,0 +1,208 @@
+package geo;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Large neighbourhood search, run from the cover the greedy merging gets stuck at. Each move tears down a few
+ * neighbouring pieces, putting the triangles of their ear-clipping triangulation (SimplePolygon.triangulate) in
+ * their place, and builds the region up again: the triangles that other pieces cover are removed (RedundantPieces)
+ * and the others are merged at random with the pieces around them, the way the greedy merging does. A move that
+ * leaves the cover larger is still accepted with probability exp(-growth / temperature), so that the search can
+ * climb out of local minima. The temperature cools geometrically over the time limit (-timeLimit), or else as moves
+ * fail to find a smaller cover, and the search stops after -searchLimit moves in a row without one.
+ * A move only touches a handful of pieces: the cover is kept in a CoverGraph, whose grid finds the pieces around a
+ * place, and each move records what it removes and adds, so that undoing it costs no more than making it.
+ */
+final class LargeNeighbourhoodSearch implements CoverOptimizer {
+
+    private static final int MIN_REGION = 2, MAX_REGION = 4; // pieces torn down by a move
+    private static final int REPAIR_ATTEMPTS = 8; // merge attempts per piece a move adds
+    private static final double START_TEMPERATURE = 0.5, END_TEMPERATURE = 0.02;
+
+    private final CoverOptimizer start; // finds the cover the search starts from
+    private final CLO clo;
+
+    LargeNeighbourhoodSearch(CoverOptimizer start, CLO clo) {
+        this.start = start;
+        this.clo = clo;
+    }
+
+    /**
+     * What a move changed in the cover, so that it can be undone. Ids are never reused, so the pieces the move added
+     * are those with an id from the first one it added on.
+     */
+    private static final class Move {
+        private final CoverGraph graph;
+        private final List<ConvexPolygon> removed = new ArrayList<>(); // pieces from before the move it removed
+        private final List<Integer> added = new ArrayList<>(); // ids of the pieces it added (some may be gone)
+
+        Move(CoverGraph graph) {
+            this.graph = graph;
+        }
+
+        private boolean isOld(int id) {
+            return added.isEmpty() || id < added.get(0);
+        }
+
+        int add(ConvexPolygon piece) {
+            int id = graph.insert(piece);
+            added.add(id);
+            return id;
+        }
+
+        void remove(int id) {
+            removed(id, graph.get(id));
+            graph.remove(id);
+        }
+
+        int merge(int first, int second, ConvexPolygon union) {
+            removed(first, graph.get(first));
+            removed(second, graph.get(second));
+            int id = graph.merge(first, second, union);
+            added.add(id);
+            return id;
+        }
+
+        /**
+         * The given piece is being, or has been, removed from the cover
+         */
+        void removed(int id, ConvexPolygon piece) {
+            if (isOld(id)) {
+                removed.add(piece);
+            }
+        }
+
+        void undo() {
+            for (int id : added) {
+                if (graph.get(id) != null) {
+                    graph.remove(id);
+                }
+            }
+            for (ConvexPolygon piece : removed) {
+                graph.insert(piece);
+            }
+        }
+    }
+
+    @Override
+    public void optimize(List<ConvexPolygon> cover, PolygonWithHoles polygon, long seed, long deadline, Progress progress) throws ConvexPolygon.NotConvexException {
+        start.optimize(cover, polygon, seed, deadline, progress);
+        Random random = new Random(seed);
+        Metrics metrics = progress.metrics();
+        CoverGraph graph = new CoverGraph(cover);
+        RedundantPieces redundant = new RedundantPieces(graph, polygon);
+        removeRedundant(redundant, new Move(graph), metrics);
+        List<ConvexPolygon> best = graph.pieces();
+        long searchStart = System.nanoTime();
+        int stale = 0, moves = 0, accepted = 0;
+        while (stale < clo.searchLimit && graph.size() > 1 && System.nanoTime() < deadline) {
+            double cooled = deadline == Long.MAX_VALUE ? (double) stale / clo.searchLimit :
+                    (double) (System.nanoTime() - searchStart) / (deadline - searchStart);
+            double temperature = START_TEMPERATURE * Math.pow(END_TEMPERATURE / START_TEMPERATURE, cooled);
+            int before = graph.size();
+            Move move = new Move(graph);
+            move(graph, polygon, redundant, random, move, metrics);
+            int growth = graph.size() - before;
+            moves++;
+            if (growth <= 0 || random.nextDouble() < Math.exp(-growth / temperature)) {
+                accepted++;
+                metrics.move(true);
+            } else {
+                move.undo();
+                metrics.move(false);
+            }
+            if (graph.size() < best.size()) {
+                best = graph.pieces();
+                stale = 0;
+            } else {
+                stale++;
+            }
+            List<ConvexPolygon> smallest = best;
+            progress.update(smallest.size(), () -> smallest);
+        }
+        cover.clear();
+        cover.addAll(best);
+        System.out.println("Made " + moves + " moves of the large neighbourhood search, accepted " + accepted +
+                " of them, the best cover has " + best.size() + " pieces");
+    }
+
+    /**
+     * Tear down a piece and some of its neighbours, and build the region up again
+     */
+    private void move(CoverGraph graph, PolygonWithHoles polygon, RedundantPieces redundant, Random random, Move move, Metrics metrics) throws ConvexPolygon.NotConvexException {
+        int seed = graph.randomPiece(random);
+        List<Integer> region = new ArrayList<>();
+        region.add(seed);
+        List<Integer> adjacent = new ArrayList<>(graph.neighbours(seed));
+        Collections.shuffle(adjacent, random);
+        int size = MIN_REGION + random.nextInt(MAX_REGION - MIN_REGION + 1);
+        for (int i = 0; i < adjacent.size() && region.size() < size; i++) {
+            region.add(adjacent.get(i));
+        }
+
+        List<Integer> open = new ArrayList<>(); // pieces the move added, to merge with the pieces around them
+        for (int id : region) {
+            ConvexPolygon piece = graph.get(id);
+            List<Triangle> triangles = new SimplePolygon(piece.outerBoundary).triangulate(Integer.MAX_VALUE);
+            double area = 0;
+            for (Triangle triangle : triangles) {
+                area += triangle.area;
+            }
+            if (Math.abs(area - piece.area) > 1e-9 * piece.area) {
+                continue; // a degenerate piece whose triangles would not cover it, keep it as it is
+            }
+            move.remove(id);
+            for (Triangle triangle : triangles) {
+                int added = move.add(triangle);
+                open.add(added);
+                redundant.queue(added);
+            }
+        }
+        removeRedundant(redundant, move, metrics);
+
+        int attempts = REPAIR_ATTEMPTS * open.size();
+        for (int attempt = 0; attempt < attempts && !open.isEmpty(); attempt++) {
+            int k = random.nextInt(open.size());
+            int first = open.get(k);
+            if (graph.get(first) == null) {
+                open.set(k, open.get(open.size() - 1));
+                open.remove(open.size() - 1);
+                continue;
+            }
+            int second = graph.randomNeighbour(first, random);
+            if (second == -1) {
+                continue;
+            }
+            metrics.drawn();
+            ConvexPolygon firstPiece = graph.get(first), secondPiece = graph.get(second);
+            if (!firstPiece.mayMergeWithin(secondPiece, polygon)) {
+                metrics.rejected(Metrics.CENTROIDS_CROSS);
+                continue;
+            }
+            ConvexPolygon union = firstPiece.mergeWith(secondPiece);
+            metrics.hull(union.outerBoundary.length);
+            int containment = union.mergeContainment(polygon);
+            if (containment != EdgeIndex.CONTAINED) {
+                metrics.rejected(containment);
+                continue;
+            }
+            int merged = move.merge(first, second, Main.inflate(union, polygon, clo, metrics));
+            metrics.merged();
+            open.add(merged);
+            redundant.changed(merged);
+            removeRedundant(redundant, move, metrics);
+        }
+    }
+
+    private static void removeRedundant(RedundantPieces redundant, Move move, Metrics metrics) {
+        List<ConvexPolygon> pieces = new ArrayList<>();
+        List<Integer> ids = redundant.remove(pieces);
+        for (int i = 0; i < ids.size(); i++) {
+            move.removed(ids.get(i), pieces.get(i));
+            metrics.removed();
+        }
+    }
+}
@@ -6,63 +6,404 @@ import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
 import java.util.Random;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
 
 public class Main {
 
+    // how often the second piece of a pair is drawn among the neighbours of the first one (with -pairing adjacent)
+    private static final double NEIGHBOUR_PROBABILITY = 0.75;
+
     public static void main(String[] args) {
         CLO clo = new CLO(args);
+        if (clo.batch != null) {
+            System.exit(Batch.run(clo) ? 0 : 1);
+        }
         try {
-            PolygonWithHoles polygon = PolygonWithHoles.parseInstanceFile(clo.file);
-            PolygonWithHoles.drawPolygons(Collections.singletonList(polygon), clo.width, clo.height, new File(clo.file + "_0_original.png"), true);
-            System.out.println("Saved the image of the original polygon to " + clo.file + "_0_original.png");
-            System.out.println("Reducing to a degenerate simple polygon...");
-            SimplePolygon simplePolygon = polygon.toSimple();
-            PolygonWithHoles.drawPolygons(Collections.singletonList(simplePolygon), clo.width, clo.height, new File(clo.file + "_1_simple.png"), true);
-            System.out.println("Saved the image of the simple polygon obtained from original to " + clo.file + "_1_simple.png");
-            System.out.println("Triangulating...");
-            List<ConvexPolygon> triangles = new ArrayList<>(simplePolygon.triangulate(1590000));
-            PolygonWithHoles.drawPolygons(new ArrayList<>(triangles), clo.width, clo.height, new File(clo.file + "_2_triangulated.png"), false);
-            System.out.println("Saved the image of the triangulated polygon to " + clo.file + "_2_triangulated.png");
-            System.out.println("Reducing cover size...");
-            reduceCoverSize(triangles, polygon, clo);
-            if (!clo.gif) {
-                PolygonWithHoles.drawPolygons(new ArrayList<>(triangles), clo.width, clo.height, new File(clo.file + "_3_cover_with_"+triangles.size()+"_pieces.png"), false);
-                System.out.println("Saved the image of the final cover to " + clo.file + "_3_cover_with_"+triangles.size()+"_pieces.png");
-            }
+            solve(clo);
         } catch (IOException e) {
-            System.err.println("Could not find the specified file " + clo.file);
+            System.err.println("Could not read " + clo.file + ": " + e);
         } catch (ConvexPolygon.NotConvexException e) {
             System.err.println("Something went wrong and program created a non-convex triangle");
+        } catch (CoverValidator.InvalidCoverException e) {
+            System.err.println(e.getMessage());
+            System.exit(1);
+        } catch (IllegalStateException e) {
+            // the ear clipping got stuck, say (its message tells what to try instead)
+            System.err.println("Could not solve " + clo.file + ": " + e.getMessage());
+            System.exit(1);
+        }
+    }
+
+    /**
+     * Compute a small convex cover of the instance in clo.file, save it as a CG:SHOP solution next to the instance
+     * file (along with the images asked for by -render) and return it. With -cache, the polygon and its
+     * triangulation are taken from (or else saved to) the cache of preprocessed instances; with -checkpoint, the
+     * reduction resumes from the cover saved by an earlier run, if any. With -timeLimit, the best cover found when
+     * the time is up is returned (the preprocessing itself cannot be cut short though). With -validate, a cover that
+     * CoverValidator finds invalid is not saved.
+     */
+    public static List<ConvexPolygon> solve(CLO clo) throws IOException, ConvexPolygon.NotConvexException, CoverValidator.InvalidCoverException {
+        long start = System.nanoTime();
+        long deadline = clo.timeLimit > 0 ? start + clo.timeLimit * 1_000_000_000L : Long.MAX_VALUE;
+        Metrics metrics = new Metrics(Solution.instanceName(clo.file), start,
+                clo.metrics == null ? null : Metrics.metricsFile(clo.metrics, clo.file, clo.metricsFormat), clo.metricsFormat);
+        List<ConvexPolygon> triangles;
+        try (Renderer renderer = clo.render.equals("none") ? null : new Renderer(clo.width, clo.height, clo.imageFormat, metrics)) {
+            Renderer stepRenderer = clo.render.equals("all") ? renderer : null;
+            long phaseStart = System.nanoTime();
+            InstanceCache cache = clo.cache == null ? null : new InstanceCache(clo.cache);
+            String key = cache == null ? null : InstanceCache.key(clo.file, clo.triangulator);
+            InstanceCache.Entry cached = cache == null ? null : cache.load(key);
+            PolygonWithHoles polygon = cached != null ? cached.polygon : PolygonWithHoles.parseInstanceFile(clo.file);
+            metrics.time(Metrics.PARSE, phaseStart);
+            if (stepRenderer != null) {
+                stepRenderer.draw(Collections.singletonList(polygon), clo.file + "_0_original", true, "the original polygon");
+            }
+            File checkpoint = clo.checkpoint == null ? null : Progress.checkpointFile(clo.checkpoint, clo.file);
+            triangles = checkpoint != null && checkpoint.isFile() ? resume(checkpoint, polygon, clo) : null;
+            if (triangles == null) {
+                List<Triangle> triangulation;
+                if (cached != null) {
+                    System.out.println("Loaded the triangulation from the cache");
+                    triangulation = cached.triangles;
+                } else if (clo.triangulator.equals("cdt")) {
+                    System.out.println("Computing the constrained Delaunay triangulation...");
+                    phaseStart = System.nanoTime();
+                    triangulation = polygon.triangulateDelaunay();
+                    metrics.time(Metrics.TRIANGULATE, phaseStart);
+                } else {
+                    System.out.println("Reducing to a degenerate simple polygon...");
+                    phaseStart = System.nanoTime();
+                    SimplePolygon simplePolygon = polygon.toSimple();
+                    metrics.time(Metrics.SIMPLIFY, phaseStart);
+                    if (stepRenderer != null) {
+                        stepRenderer.draw(Collections.singletonList(simplePolygon), clo.file + "_1_simple", true, "the simple polygon obtained from original");
+                    }
+                    System.out.println("Triangulating...");
+                    phaseStart = System.nanoTime();
+                    triangulation = simplePolygon.triangulate(1590000);
+                    metrics.time(Metrics.TRIANGULATE, phaseStart);
+                }
+                if (cache != null && cached == null) {
+                    cache.store(key, polygon, triangulation);
+                    System.out.println("Saved the polygon and its triangulation to the cache");
+                }
+                triangles = new ArrayList<>(triangulation);
+                if (stepRenderer != null) {
+                    stepRenderer.draw(new ArrayList<>(triangles), clo.file + "_2_triangulated", false, "the triangulated polygon");
+                }
+            }
+            System.out.println("Reducing cover size...");
+            Progress progress = new Progress(Solution.instanceName(clo.file), start, clo.progressInterval, checkpoint, metrics);
+            phaseStart = System.nanoTime();
+            if (clo.threads > 1) {
+                triangles = reduceCoverSizeInParallel(triangles, polygon, clo, deadline, progress);
+            } else {
+                optimizer(clo, stepRenderer).optimize(triangles, polygon, clo.seed, deadline, progress);
+            }
+            metrics.time(Metrics.REDUCE, phaseStart);
+            if (System.nanoTime() >= deadline) {
+                System.out.println("Stopped after the time limit of " + clo.timeLimit + " s");
+            }
+            progress.finish(triangles);
+            if (clo.validate) {
+                phaseStart = System.nanoTime();
+                CoverValidator.check(polygon, triangles, Math.max(clo.threads, clo.mergeThreads));
+                metrics.time(Metrics.VALIDATE, phaseStart);
+                System.out.println("Checked that the cover is valid");
+            }
+            File solution = Solution.solutionFile(clo.file);
+            Solution.write(solution, Solution.instanceName(clo.file), triangles);
+            System.out.println("Saved the cover with " + triangles.size() + " pieces to " + solution);
+            if (renderer != null) {
+                renderer.draw(new ArrayList<>(triangles), clo.file + "_3_cover_with_" + triangles.size() + "_pieces", false, "the final cover");
+            }
+        }
+        // once the renderer is done, so that the time spent drawing the final cover is counted
+        metrics.save(triangles.size());
+        return triangles;
+    }
+
+    /**
+     * The cover saved to the checkpoint file, or null if it cannot be read or is not a valid cover of the polygon.
+     * The checkpoint is only named after the instance, whose file may have changed since, and the reduction trusts
+     * its pieces to be within the polygon, so they are checked (see CoverValidator).
+     */
+    private static List<ConvexPolygon> resume(File checkpoint, PolygonWithHoles polygon, CLO clo) throws ConvexPolygon.NotConvexException {
+        List<Point[]> rings;
+        try {
+            rings = Solution.readRings(checkpoint, Solution.instanceName(clo.file));
+        } catch (IOException e) {
+            System.err.println("Ignoring the checkpoint " + checkpoint + ": " + e.getMessage());
+            return null;
+        }
+        List<String> problems = CoverValidator.validate(polygon, rings, Math.max(clo.threads, clo.mergeThreads));
+        if (!problems.isEmpty()) {
+            System.err.println("Ignoring the checkpoint " + checkpoint + ": it is not a valid cover of " + clo.file +
+                    " (" + problems.get(0) + ")");
+            return null;
         }
+        List<ConvexPolygon> cover = new ArrayList<>(rings.size());
+        for (Point[] ring : rings) {
+            cover.add(new ConvexPolygon(ring));
+        }
+        System.out.println("Resuming from the cover with " + cover.size() + " pieces saved to " + checkpoint);
+        return cover;
+    }
+
+    /**
+     * The optimizer chosen with -optimizer; unless @param renderer is null, the greedy merging saves an image of the
+     * cover after each merge
+     */
+    static CoverOptimizer optimizer(CLO clo, Renderer renderer) {
+        CoverOptimizer greedy = (cover, polygon, seed, deadline, progress) ->
+                reduceCoverSize(cover, polygon, clo, seed, deadline, renderer, progress);
+        return clo.optimizer.equals("lns") ? new LargeNeighbourhoodSearch(greedy, clo) : greedy;
     }
 
     /**
      * Reduces the size of the convex cover (initially a triangulation) by randomly merging existing pieces.
-     * If pairs of randomly chose pieces cannot be merged @param limit times in a row, stop the procedure.
+     * By default the second piece of a pair is usually a random neighbour of the first one in the adjacency graph of
+     * the cover, since pieces far apart can hardly ever be merged. Pieces that do not touch can still be merged
+     * though (the gap between them may be covered by other pieces), so every so often the second piece is chosen
+     * uniformly instead. With "-pairing random" both pieces are always chosen uniformly.
+     * If pairs of randomly chose pieces cannot be merged @param limit times in a row, or the @param deadline (in
+     * terms of System.nanoTime()) has passed, stop the procedure. Pairs that failed are remembered (see FailedPairs),
+     * so drawing one again costs next to nothing, and the procedure also stops once every pair of pieces in the cover
+     * has failed. Unless @param renderer is null, an image of the cover is saved after each merge; @param progress is
+     * told about each merge. With -removeRedundant, the pieces that the other pieces cover are removed, at the start
+     * and then among the pieces around each new merged piece (see RedundantPieces). With -inflate, each merged
+     * piece is first grown toward the vertices of the polygon around it (see ConvexPolygon.inflateWithin).
      */
-    public static void reduceCoverSize(List<ConvexPolygon> cover, PolygonWithHoles toCover, CLO clo) throws ConvexPolygon.NotConvexException {
+    public static void reduceCoverSize(List<ConvexPolygon> cover, PolygonWithHoles toCover, CLO clo, long seed, long deadline, Renderer renderer, Progress progress) throws ConvexPolygon.NotConvexException {
+        if (clo.mergeThreads > 1) {
+            reduceCoverSizeConcurrently(cover, toCover, clo, seed, deadline, progress);
+            return;
+        }
         Random random = new Random();
         int step = 3;
-        random.setSeed(clo.seed);
+        random.setSeed(seed);
+        CoverGraph graph = new CoverGraph(cover);
+        FailedPairs failed = new FailedPairs();
+        Metrics metrics = progress.metrics();
+        RedundantPieces redundant = clo.removeRedundant ? new RedundantPieces(graph, toCover) : null;
         int triesLeft = clo.searchLimit;
-        while (triesLeft > 0 && cover.size() > 1) {
+        int attempts = 0, rejected = 0, repeated = 0, removed = 0;
+        if (redundant != null) {
+            removed += removeRedundant(redundant, failed, metrics);
+        }
+        while (triesLeft > 0 && graph.size() > 1 && System.nanoTime() < deadline) {
             triesLeft--;
-            ConvexPolygon first = null, second = null;
-            while (first == second) {
-                first = cover.get(random.nextInt(cover.size()));
-                second = cover.get(random.nextInt(cover.size() - 1));
-            }
-            ConvexPolygon union = first.mergeWith(second);
-            if (union.isContainedWithin(toCover)) {
-                cover.remove(first);
-                cover.remove(second);
-                cover.add(union);
-                triesLeft = clo.searchLimit;
-                if (clo.gif) {
-                    System.out.println("Saving the image of the cover with " + cover.size() + " pieces to " + clo.file + "_" + step + "_cover_with_" + cover.size() + "_pieces.png");
-                    PolygonWithHoles.drawPolygons(new ArrayList<>(cover), clo.width, clo.height, new File(clo.file + "_" + (step++) + "_cover_with_" + cover.size() + "_pieces.png"), false);
+            int first = graph.randomPiece(random);
+            int second = -1;
+            if (clo.pairing.equals("adjacent") && random.nextDouble() < NEIGHBOUR_PROBABILITY) {
+                second = graph.randomNeighbour(first, random);
+            }
+            while (second == -1 || second == first) {
+                second = graph.randomPiece(random);
+            }
+            metrics.drawn();
+            if (failed.contains(first, second)) {
+                repeated++;
+                metrics.rejected(Metrics.KNOWN_FAILURE);
+                continue;
+            }
+            attempts++;
+            if (!graph.get(first).mayMergeWithin(graph.get(second), toCover)) {
+                rejected++;
+                metrics.rejected(Metrics.CENTROIDS_CROSS);
+            } else {
+                ConvexPolygon union = graph.get(first).mergeWith(graph.get(second));
+                metrics.hull(union.outerBoundary.length);
+                int containment = union.mergeContainment(toCover);
+                if (containment != EdgeIndex.CONTAINED) {
+                    metrics.rejected(containment);
+                } else {
+                    union = inflate(union, toCover, clo, metrics);
+                    int merged = graph.merge(first, second, union);
+                    metrics.merged();
+                    failed.retire(first);
+                    failed.retire(second);
+                    if (redundant != null) {
+                        redundant.changed(merged);
+                        removed += removeRedundant(redundant, failed, metrics);
+                    }
+                    triesLeft = clo.searchLimit;
+                    progress.update(graph.size(), graph::pieces);
+                    if (renderer != null) {
+                        renderer.draw(new ArrayList<>(graph.pieces()), clo.file + "_" + (step++) + "_cover_with_" + graph.size() + "_pieces", false, "the cover with " + graph.size() + " pieces");
+                    }
+                    continue;
                 }
             }
+            failed.add(first, second);
+            if (failed.size() == (long) graph.size() * (graph.size() - 1) / 2) {
+                System.out.println("Every pair of the " + graph.size() + " pieces has been tried, none of them can be merged");
+                break;
+            }
+        }
+        cover.clear();
+        cover.addAll(graph.pieces());
+        System.out.println("Rejected " + rejected + " out of " + attempts + " candidate pairs before building their hull, " +
+                "skipped " + repeated + " pairs known to fail");
+        if (redundant != null) {
+            System.out.println("Removed " + removed + " pieces covered by the other pieces");
+        }
+    }
+
+    /**
+     * The merged piece, grown within the polygon if inflating (-inflate)
+     */
+    static ConvexPolygon inflate(ConvexPolygon union, PolygonWithHoles toCover, CLO clo, Metrics metrics) throws ConvexPolygon.NotConvexException {
+        if (!clo.inflate) {
+            return union;
+        }
+        ConvexPolygon inflated = union.inflateWithin(toCover);
+        if (inflated != union) {
+            metrics.inflated();
+        }
+        return inflated;
+    }
+
+    /**
+     * Remove the queued pieces that the other pieces cover, and return how many there were
+     */
+    private static int removeRedundant(RedundantPieces redundant, FailedPairs failed, Metrics metrics) {
+        List<Integer> removed = redundant.remove();
+        for (int id : removed) {
+            failed.retire(id);
+            metrics.removed();
+        }
+        return removed.size();
+    }
+
+    /**
+     * Same procedure as reduceCoverSize, but with several threads merging pieces of the same cover at once (see
+     * ConcurrentCover). The search stops once @param limit attempts in a row, counted over all threads, have failed.
+     */
+    public static void reduceCoverSizeConcurrently(List<ConvexPolygon> cover, PolygonWithHoles toCover, CLO clo, long seed, long deadline, Progress progress) throws ConvexPolygon.NotConvexException {
+        toCover.edgeIndex(); // build it once before the threads start
+        ConcurrentCover store = new ConcurrentCover(new CoverGraph(cover));
+        AtomicInteger failuresInARow = new AtomicInteger();
+        LongAdder attempts = new LongAdder(), rejected = new LongAdder();
+        Metrics metrics = progress.metrics();
+        ExecutorService pool = Executors.newFixedThreadPool(clo.mergeThreads);
+        try {
+            List<Future<Void>> workers = new ArrayList<>();
+            for (int i = 0; i < clo.mergeThreads; i++) {
+                Random random = new Random(seed * clo.mergeThreads + i);
+                workers.add(pool.submit(() -> {
+                    while (failuresInARow.get() < clo.searchLimit && store.size() > 1 && System.nanoTime() < deadline &&
+                            !Thread.currentThread().isInterrupted()) {
+                        int first = store.randomPiece(random);
+                        int second = -1;
+                        if (clo.pairing.equals("adjacent") && random.nextDouble() < NEIGHBOUR_PROBABILITY) {
+                            second = store.randomNeighbour(first, random);
+                        }
+                        if (second == -1) {
+                            second = store.randomPiece(random);
+                        }
+                        if (second == first) {
+                            continue;
+                        }
+                        ConvexPolygon firstPiece = store.get(first), secondPiece = store.get(second);
+                        if (firstPiece == null || secondPiece == null) {
+                            continue; // merged by another thread in the meantime
+                        }
+                        attempts.increment();
+                        metrics.drawn();
+                        if (!firstPiece.mayMergeWithin(secondPiece, toCover)) {
+                            rejected.increment();
+                            metrics.rejected(Metrics.CENTROIDS_CROSS);
+                            failuresInARow.incrementAndGet();
+                            continue;
+                        }
+                        ConvexPolygon union = firstPiece.mergeWith(secondPiece);
+                        metrics.hull(union.outerBoundary.length);
+                        int containment = union.mergeContainment(toCover);
+                        if (containment != EdgeIndex.CONTAINED) {
+                            metrics.rejected(containment);
+                            failuresInARow.incrementAndGet();
+                        } else if (store.tryMerge(first, firstPiece, second, secondPiece, inflate(union, toCover, clo, metrics))) {
+                            metrics.merged();
+                            failuresInARow.set(0);
+                            progress.update(store.size(), store::pieces);
+                        } else {
+                            metrics.conflict();
+                        }
+                    }
+                    return null;
+                }));
+            }
+            for (Future<Void> worker : workers) {
+                worker.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while reducing the cover", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof ConvexPolygon.NotConvexException) {
+                throw (ConvexPolygon.NotConvexException) e.getCause();
+            }
+            throw new IllegalStateException(e.getCause());
+        } finally {
+            pool.shutdownNow();
+        }
+        cover.clear();
+        cover.addAll(store.pieces());
+        System.out.println("Rejected " + rejected.sum() + " out of " + attempts.sum() + " candidate pairs before building their hull");
+        if (clo.removeRedundant) {
+            // the threads share the cover through ConcurrentCover, so the pieces are only removed once they are done
+            int removed = RedundantPieces.removeFrom(cover, toCover);
+            for (int i = 0; i < removed; i++) {
+                metrics.removed();
+            }
+            System.out.println("Removed " + removed + " pieces covered by the other pieces");
+        }
+    }
+
+    /**
+     * Run independent reductions (with the optimizer of -optimizer) of the same initial cover, one per thread and
+     * each with its own seed (the seed given on the command line, plus 1, plus 2, ...), and return the smallest cover
+     * found. The polygon and its edge index are shared by all the runs, only the list of pieces is copied.
+     */
+    public static List<ConvexPolygon> reduceCoverSizeInParallel(List<ConvexPolygon> initialCover, PolygonWithHoles toCover, CLO clo, long deadline, Progress progress) throws ConvexPolygon.NotConvexException {
+        toCover.edgeIndex(); // build it once before the threads start
+        ExecutorService pool = Executors.newFixedThreadPool(clo.threads);
+        try {
+            List<Future<List<ConvexPolygon>>> runs = new ArrayList<>();
+            for (int i = 0; i < clo.threads; i++) {
+                long seed = clo.seed + i;
+                runs.add(pool.submit(() -> {
+                    List<ConvexPolygon> cover = new ArrayList<>(initialCover);
+                    optimizer(clo, null).optimize(cover, toCover, seed, deadline, progress);
+                    System.out.println("Run with seed " + seed + " found a cover with " + cover.size() + " pieces");
+                    return cover;
+                }));
+            }
+            List<ConvexPolygon> best = null;
+            for (Future<List<ConvexPolygon>> run : runs) {
+                List<ConvexPolygon> cover = run.get();
+                if (best == null || cover.size() < best.size()) {
+                    best = cover;
+                }
+            }
+            return best;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while reducing the cover", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof ConvexPolygon.NotConvexException) {
+                throw (ConvexPolygon.NotConvexException) e.getCause();
+            }
+            throw new IllegalStateException(e.getCause());
+        } finally {
+            pool.shutdownNow();
         }
     }
-}
\ No newline at end of file
+}
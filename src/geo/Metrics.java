@@ -0,0 +1,253 @@
+package geo;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.concurrent.atomic.LongAdder;
+import org.json.JSONWriter;
+
+/**
+ * Counters of what goes on while an instance is solved: how the pairs drawn by the reduction fare (merged, or
+ * why not), how large the hulls built are, and how long each phase takes. Everything is counted with LongAdders,
+ * which spread concurrent updates over several cells, so counting costs next to nothing even with all the threads
+ * of -threads and -mergeThreads updating the same counters. With -metrics, the counts are saved, as JSON or in the
+ * Prometheus text format, with each progress report and when the instance is solved.
+ */
+final class Metrics {
+
+    // Why a pair drawn by the reduction was not merged: one of the outcomes of EdgeIndex.containment, or these
+    static final int KNOWN_FAILURE = 4, CENTROIDS_CROSS = 5;
+    private static final String[] REASONS = {null, "vertex_outside", "boundary_vertex_inside",
+            "boundary_midpoint_inside", "known_failure", "centroids_cross"};
+
+    // Phases of solving an instance
+    static final int PARSE = 0, SIMPLIFY = 1, TRIANGULATE = 2, REDUCE = 3, RENDER = 4, VALIDATE = 5;
+    private static final String[] PHASES = {"parse", "simplify", "triangulate", "reduce", "render", "validate"};
+
+    // Buckets of the histogram of hull sizes: at most 4, 8, ..., 1024 vertices, and more
+    private static final int BUCKETS = 10;
+
+    private final String instance;
+    private final long start; // System.nanoTime() when solving started
+    private final File file; // null if the metrics are not saved
+    private final boolean prometheus;
+
+    private final LongAdder drawn = new LongAdder(), hulls = new LongAdder();
+    private final LongAdder merges = new LongAdder(), conflicts = new LongAdder(), removals = new LongAdder();
+    private final LongAdder inflations = new LongAdder();
+    private final LongAdder moves = new LongAdder(), acceptedMoves = new LongAdder();
+    private final LongAdder[] rejections = adders(REASONS.length);
+    private final LongAdder[] hullSizes = adders(BUCKETS);
+    private final LongAdder hullVertices = new LongAdder();
+    private final LongAdder[] phaseNanos = adders(PHASES.length);
+
+    /**
+     * Metrics of the given instance, saved to @param file in the given format ("json" or "prometheus"), or not
+     * saved at all if the file is null
+     */
+    Metrics(String instance, long start, File file, String format) {
+        this.instance = instance;
+        this.start = start;
+        this.file = file;
+        this.prometheus = format.equals("prometheus");
+    }
+
+    /**
+     * The file the metrics of the given instance are saved to in the metrics directory
+     */
+    static File metricsFile(String directory, String instanceFile, String format) {
+        return new File(directory, Solution.instanceName(instanceFile) + (format.equals("prometheus") ? ".prom" : ".metrics.json"));
+    }
+
+    private static LongAdder[] adders(int n) {
+        LongAdder[] adders = new LongAdder[n];
+        for (int i = 0; i < n; i++) {
+            adders[i] = new LongAdder();
+        }
+        return adders;
+    }
+
+    /**
+     * A pair of pieces (both in the cover) was drawn
+     */
+    void drawn() {
+        drawn.increment();
+    }
+
+    /**
+     * The hull of a pair was built, with the given number of vertices
+     */
+    void hull(int vertices) {
+        hulls.increment();
+        hullVertices.add(vertices);
+        // bucket b holds the sizes up to 2^(b+2)
+        int bucket = 32 - Integer.numberOfLeadingZeros(Math.max(vertices, 4) - 1) - 2;
+        hullSizes[Math.min(bucket, BUCKETS - 1)].increment();
+    }
+
+    void merged() {
+        merges.increment();
+    }
+
+    /**
+     * A merged piece was grown by taking in vertices of the polygon
+     */
+    void inflated() {
+        inflations.increment();
+    }
+
+    /**
+     * A move of the large neighbourhood search was made, and accepted or undone
+     */
+    void move(boolean accepted) {
+        moves.increment();
+        if (accepted) {
+            acceptedMoves.increment();
+        }
+    }
+
+    /**
+     * A piece the other pieces covered was removed from the cover
+     */
+    void removed() {
+        removals.increment();
+    }
+
+    /**
+     * The pair could not be merged, for the given reason
+     */
+    void rejected(int reason) {
+        rejections[reason].increment();
+    }
+
+    /**
+     * A hull within the polygon was dropped as another thread merged one of its pieces first
+     */
+    void conflict() {
+        conflicts.increment();
+    }
+
+    /**
+     * Add the time since @param since (a System.nanoTime()) to the given phase
+     */
+    void time(int phase, long since) {
+        phaseNanos[phase].add(System.nanoTime() - since);
+    }
+
+    /**
+     * Save the metrics (if they are saved at all), along with the current size of the cover
+     */
+    synchronized void save(int pieces) {
+        if (file == null) {
+            return;
+        }
+        try {
+            // write the whole file before replacing the previous one, so that readers never see half of it
+            File directory = file.getAbsoluteFile().getParentFile();
+            Files.createDirectories(directory.toPath());
+            Path temporary = Files.createTempFile(directory.toPath(), file.getName(), ".tmp");
+            try {
+                try (Writer writer = Files.newBufferedWriter(temporary, StandardCharsets.UTF_8)) {
+                    if (prometheus) {
+                        writePrometheus(new PrintWriter(writer), pieces);
+                    } else {
+                        writeJson(writer, pieces);
+                    }
+                }
+                Files.move(temporary, file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } finally {
+                Files.deleteIfExists(temporary);
+            }
+        } catch (IOException e) {
+            System.err.println("Could not save the metrics to " + file + ": " + e);
+        }
+    }
+
+    private void writeJson(Writer writer, int pieces) {
+        JSONWriter json = new JSONWriter(writer);
+        json.object()
+                .key("instance").value(instance)
+                .key("seconds").value((System.nanoTime() - start) / 1e9)
+                .key("pieces").value(pieces)
+                .key("pairs_drawn").value(drawn.sum())
+                .key("hulls_built").value(hulls.sum())
+                .key("merges").value(merges.sum())
+                .key("conflicts").value(conflicts.sum())
+                .key("removals").value(removals.sum())
+                .key("inflations").value(inflations.sum())
+                .key("moves").value(moves.sum())
+                .key("moves_accepted").value(acceptedMoves.sum());
+        json.key("rejections").object();
+        for (int reason = 1; reason < REASONS.length; reason++) {
+            json.key(REASONS[reason]).value(rejections[reason].sum());
+        }
+        json.endObject();
+        json.key("hull_vertices").object()
+                .key("count").value(hulls.sum())
+                .key("sum").value(hullVertices.sum())
+                .key("buckets").object();
+        for (int bucket = 0; bucket < BUCKETS; bucket++) {
+            json.key(bucket < BUCKETS - 1 ? String.valueOf(4 << bucket) : "+Inf").value(hullSizes[bucket].sum());
+        }
+        json.endObject().endObject();
+        json.key("phase_seconds").object();
+        for (int phase = 0; phase < PHASES.length; phase++) {
+            json.key(PHASES[phase]).value(phaseNanos[phase].sum() / 1e9);
+        }
+        json.endObject();
+        json.endObject();
+    }
+
+    private void writePrometheus(PrintWriter out, int pieces) {
+        String labels = "instance=\"" + instance.replace("\\", "\\\\").replace("\"", "\\\"") + "\"";
+        metric(out, "cover_pieces", "gauge", "Number of pieces of the cover", labels, pieces);
+        metric(out, "cover_seconds", "gauge", "Seconds since solving started", labels, (System.nanoTime() - start) / 1e9);
+        metric(out, "cover_pairs_drawn_total", "counter", "Pairs of pieces drawn by the reduction", labels, drawn.sum());
+        metric(out, "cover_hulls_built_total", "counter", "Hulls of pairs built", labels, hulls.sum());
+        metric(out, "cover_merges_total", "counter", "Pairs merged", labels, merges.sum());
+        metric(out, "cover_conflicts_total", "counter", "Merges dropped as another thread got there first", labels, conflicts.sum());
+        metric(out, "cover_inflations_total", "counter", "Merged pieces grown by taking in vertices of the polygon", labels, inflations.sum());
+        metric(out, "cover_moves_total", "counter", "Moves of the large neighbourhood search", labels, moves.sum());
+        metric(out, "cover_moves_accepted_total", "counter", "Moves of the large neighbourhood search accepted", labels, acceptedMoves.sum());
+        metric(out, "cover_removals_total", "counter", "Pieces removed as the other pieces covered them", labels, removals.sum());
+
+        header(out, "cover_rejections_total", "counter", "Pairs not merged, by reason");
+        for (int reason = 1; reason < REASONS.length; reason++) {
+            sample(out, "cover_rejections_total", labels + ",reason=\"" + REASONS[reason] + "\"", rejections[reason].sum());
+        }
+
+        header(out, "cover_hull_vertices", "histogram", "Number of vertices of the hulls built");
+        long cumulative = 0;
+        for (int bucket = 0; bucket < BUCKETS; bucket++) {
+            cumulative += hullSizes[bucket].sum();
+            String bound = bucket < BUCKETS - 1 ? String.valueOf(4 << bucket) : "+Inf";
+            sample(out, "cover_hull_vertices_bucket", labels + ",le=\"" + bound + "\"", cumulative);
+        }
+        sample(out, "cover_hull_vertices_sum", labels, hullVertices.sum());
+        sample(out, "cover_hull_vertices_count", labels, cumulative);
+
+        header(out, "cover_phase_seconds_total", "counter", "Seconds spent in each phase");
+        for (int phase = 0; phase < PHASES.length; phase++) {
+            sample(out, "cover_phase_seconds_total", labels + ",phase=\"" + PHASES[phase] + "\"", phaseNanos[phase].sum() / 1e9);
+        }
+        out.flush();
+    }
+
+    private static void metric(PrintWriter out, String name, String type, String help, String labels, double value) {
+        header(out, name, type, help);
+        sample(out, name, labels, value);
+    }
+
+    private static void header(PrintWriter out, String name, String type, String help) {
+        out.print("# HELP " + name + " " + help + "\n# TYPE " + name + " " + type + "\n");
+    }
+
+    private static void sample(PrintWriter out, String name, String labels, double value) {
+        out.print(name + "{" + labels + "} " + (value == Math.rint(value) ? String.valueOf((long) value) : String.valueOf(value)) + "\n");
+    }
+}
@@ -0,0 +1,157 @@
+package geo;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.zip.Adler32;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * Writes a PNG image (8-bit RGB) a band of rows at a time, so that the whole image never has to be in memory.
+ * The image data of a PNG is a single zlib stream, but a deflate stream can be cut into independent runs of blocks
+ * that end on a byte boundary (what a sync flush does), each compressed without reference to the ones before it,
+ * and the Adler-32 checksum of the whole can be computed from those of the parts. So bands are compressed on their
+ * own (possibly in parallel, see compress) and written in order, one IDAT chunk each.
+ */
+final class PngWriter implements AutoCloseable {
+
+    private static final byte[] SIGNATURE = {(byte) 0x89, 'P', 'N', 'G', '\r', '\n', 0x1a, '\n'};
+    private static final byte[] ZLIB_HEADER = {0x78, (byte) 0x9c}; // deflate, 32K window, default compression
+    private static final byte[] FINAL_BLOCK = {0x03, 0x00}; // an empty final block, closing the deflate stream
+    private static final byte FILTER_SUB = 1; // each byte minus the same byte of the pixel to its left
+    private static final long ADLER_BASE = 65521;
+
+    /**
+     * A band of rows, filtered and compressed
+     */
+    static final class Band {
+        private final byte[] data;
+        private final int adler; // checksum of the filtered rows
+        private final long length; // length of the filtered rows
+
+        private Band(byte[] data, int adler, long length) {
+            this.data = data;
+            this.adler = adler;
+            this.length = length;
+        }
+    }
+
+    private final DataOutputStream out;
+    private final CRC32 crc = new CRC32();
+    private long adler = 1; // checksum of the rows written so far
+
+    /**
+     * Start an image of the given size, to be written to @param stream (which close closes)
+     */
+    PngWriter(OutputStream stream, int width, int height) throws IOException {
+        out = new DataOutputStream(new BufferedOutputStream(stream, 1 << 16));
+        out.write(SIGNATURE);
+        byte[] header = new byte[13];
+        writeInt(header, 0, width);
+        writeInt(header, 4, height);
+        header[8] = 8; // bits per sample
+        header[9] = 2; // RGB
+        chunk("IHDR", header, 0, header.length);
+        chunk("IDAT", ZLIB_HEADER, 0, ZLIB_HEADER.length);
+    }
+
+    /**
+     * Filter and compress the given rows of pixels (as in a BufferedImage of TYPE_INT_RGB), independently of the
+     * other bands, so that bands can be compressed in parallel
+     */
+    static Band compress(int[] pixels, int width, int rows) {
+        int stride = 1 + 3 * width;
+        byte[] filtered = new byte[rows * stride];
+        for (int row = 0; row < rows; row++) {
+            int offset = row * stride, left = 0;
+            filtered[offset] = FILTER_SUB;
+            for (int x = 0; x < width; x++) {
+                int pixel = pixels[row * width + x];
+                int i = offset + 1 + 3 * x;
+                filtered[i] = (byte) ((pixel >> 16) - (left >> 16));
+                filtered[i + 1] = (byte) ((pixel >> 8) - (left >> 8));
+                filtered[i + 2] = (byte) (pixel - left);
+                left = pixel;
+            }
+        }
+        Adler32 checksum = new Adler32();
+        checksum.update(filtered, 0, filtered.length);
+
+        Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+        try {
+            deflater.setInput(filtered);
+            byte[] data = new byte[Math.max(64, filtered.length / 4)];
+            int length = 0;
+            while (true) {
+                length += deflater.deflate(data, length, data.length - length, Deflater.SYNC_FLUSH);
+                if (length < data.length) {
+                    break; // the flush is complete when the output was not filled up
+                }
+                data = Arrays.copyOf(data, 2 * data.length);
+            }
+            return new Band(Arrays.copyOf(data, length), (int) checksum.getValue(), filtered.length);
+        } finally {
+            deflater.end();
+        }
+    }
+
+    /**
+     * Append a band (the bands have to be written from top to bottom)
+     */
+    void write(Band band) throws IOException {
+        chunk("IDAT", band.data, 0, band.data.length);
+        adler = combine(adler, band.adler & 0xffffffffL, band.length);
+    }
+
+    /**
+     * Finish the image and close the stream
+     */
+    @Override
+    public void close() throws IOException {
+        try {
+            byte[] trailer = Arrays.copyOf(FINAL_BLOCK, FINAL_BLOCK.length + 4);
+            writeInt(trailer, FINAL_BLOCK.length, (int) adler);
+            chunk("IDAT", trailer, 0, trailer.length);
+            chunk("IEND", new byte[0], 0, 0);
+        } finally {
+            out.close();
+        }
+    }
+
+    /**
+     * Adler-32 checksum of the concatenation of two byte sequences, from the checksum of each and the length of the
+     * second one (as zlib's adler32_combine)
+     */
+    private static long combine(long first, long second, long secondLength) {
+        long remainder = secondLength % ADLER_BASE;
+        long sum1 = first & 0xffff;
+        long sum2 = (remainder * sum1) % ADLER_BASE;
+        sum1 += (second & 0xffff) + ADLER_BASE - 1;
+        sum2 += (first >>> 16) + (second >>> 16) + ADLER_BASE - remainder;
+        sum1 %= ADLER_BASE;
+        sum2 %= ADLER_BASE;
+        return (sum2 << 16) | sum1;
+    }
+
+    private void chunk(String type, byte[] data, int offset, int length) throws IOException {
+        byte[] name = type.getBytes(StandardCharsets.US_ASCII);
+        crc.reset();
+        crc.update(name);
+        crc.update(data, offset, length);
+        out.writeInt(length);
+        out.write(name);
+        out.write(data, offset, length);
+        out.writeInt((int) crc.getValue());
+    }
+
+    private static void writeInt(byte[] bytes, int offset, int value) {
+        bytes[offset] = (byte) (value >>> 24);
+        bytes[offset + 1] = (byte) (value >>> 16);
+        bytes[offset + 2] = (byte) (value >>> 8);
+        bytes[offset + 3] = (byte) value;
+    }
+}
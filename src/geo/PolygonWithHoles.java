@@ -1,222 +1,233 @@
 package geo;
 
-import java.awt.*;
-import java.awt.image.BufferedImage;
-import java.io.File;
 import java.io.IOException;
-import java.nio.charset.StandardCharsets;
-import java.nio.file.FileSystems;
-import java.nio.file.Files;
-import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
-import org.json.*;
-
-import javax.imageio.ImageIO;
 
 public class PolygonWithHoles {
 
     protected final Point[] outerBoundary;
     protected final Point[][] holes;
+    private volatile EdgeIndex edgeIndex; // built on first use
 
     public PolygonWithHoles(Point[] outerBoundary, Point[][] holes) {
         this.outerBoundary = outerBoundary;
         this.holes = holes;
     }
 
+    /**
+     * A polygon whose edge index is already built (read from the cache of preprocessed instances)
+     */
+    PolygonWithHoles(Point[] outerBoundary, Point[][] holes, EdgeIndex edgeIndex) {
+        this(outerBoundary, holes);
+        this.edgeIndex = edgeIndex;
+    }
+
     public static PolygonWithHoles parseInstanceFile(String instanceFile) throws IOException {
-        Path path = FileSystems.getDefault().getPath(instanceFile);
-        String jsonString = String.join("\n", Files.readAllLines(path));
-        JSONObject json = new JSONObject(jsonString);
-
-        JSONArray jsonOuterBoundary = json.getJSONArray("outer_boundary");
-        Point[] outerBoundary = parsePointArray(jsonOuterBoundary);
-
-        JSONArray jsonHoles = json.getJSONArray("holes");
-        Point[][] holes = new Point[jsonHoles.length()][];
-        for (int i = 0; i < jsonHoles.length(); i++) {
-            JSONArray jsonHole = jsonHoles.getJSONArray(i);
-            holes[i] = parsePointArray(jsonHole);
+        return InstanceReader.read(instanceFile);
+    }
+
+    protected List<Edge> getAllEdges() {
+        List<Edge> result = new ArrayList<>();
+        for (int i = 0; i < outerBoundary.length; i++) {
+            result.add(new Edge(outerBoundary[i], outerBoundary[(i+1)%outerBoundary.length]));
+        }
+        for (Point[] hole: holes) {
+            for (int i = 0; i < hole.length; i++) {
+                result.add(new Edge(hole[i], hole[(i+1)%hole.length]));
+            }
         }
-        return new PolygonWithHoles(outerBoundary, holes);
+        return result;
     }
 
     /**
-     * Create a nice to look at .png picture
+     * Spatial index over the edges of the outer boundary and the holes. It is built once, the first time it is
+     * needed, and shared by all subsequent queries.
      */
-    public static void drawPolygons(List<PolygonWithHoles> polygons, int width, int height, File outputFile, boolean monochrome) {
-        Rectangle bounds = null;
-        for (PolygonWithHoles polygon : polygons) {
-            for (Point point : polygon.outerBoundary) {
-                if (bounds == null) {
-                    bounds = new Rectangle((int) point.x, (int) point.y, 0, 0);
-                }
-                bounds.add(point.x, point.y);
-            }
-            for (Point[] hole : polygon.holes) {
-                for (Point point : hole) {
-                    bounds.add(point.x, point.y);
+    public EdgeIndex edgeIndex() {
+        EdgeIndex index = edgeIndex;
+        if (index == null) {
+            synchronized (this) {
+                index = edgeIndex;
+                if (index == null) {
+                    index = new EdgeIndex(getAllEdges());
+                    edgeIndex = index;
                 }
             }
         }
+        return index;
+    }
 
-        // Determine the scaling factor to fit the polygons on the image
-        double scaleX = (double) width / bounds.width;
-        double scaleY = (double) height / bounds.height;
-        double scale = Math.min(scaleX, scaleY);
-
-        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
-        Graphics2D g = image.createGraphics();
-        g.setColor(Color.white);
-        g.fillRect(0, 0, width, height);
-
-        for (PolygonWithHoles polygon : polygons) {
-
-            // Get a pseudo-random color based on polygon's hashcode
-            Color color;
-            if (!monochrome) {
-                int colorCode = polygon.hashCode();
-                int R = (colorCode & 0xFF0000) >> 16;
-                int G = (colorCode & 0x00FF00) >> 8;
-                int B = colorCode & 0x0000FF;
-                color = new Color(R, G, B, 128);
-            } else {
-                color = new Color(125, 125, 125, 128);
-            }
+    /**
+     * Constrained Delaunay triangulation of the polygon, holes included (no conversion to a simple polygon needed)
+     */
+    public List<Triangle> triangulateDelaunay() throws ConvexPolygon.NotConvexException {
+        return new ConstrainedDelaunay(this).triangles();
+    }
 
-            int[] xPoints = new int[polygon.outerBoundary.length];
-            int[] yPoints = new int[polygon.outerBoundary.length];
-            for (int i = 0; i < polygon.outerBoundary.length; i++) {
-                xPoints[i] = (int) ((polygon.outerBoundary[i].x - bounds.x) * scale);
-                yPoints[i] = (int) ((polygon.outerBoundary[i].y - bounds.y) * scale);
-            }
-            g.setColor(color);
-            g.fillPolygon(xPoints, yPoints, xPoints.length);
-            g.setColor(Color.BLACK);
-            g.drawPolygon(xPoints, yPoints, xPoints.length);
-
-            for (Point[] hole : polygon.holes) {
-                xPoints = new int[hole.length];
-                yPoints = new int[hole.length];
-                for (int i = 0; i < hole.length; i++) {
-                    xPoints[i] = (int) ((hole[i].x - bounds.x) * scale);
-                    yPoints[i] = (int) ((hole[i].y - bounds.y) * scale);
-                }
-                g.setColor(Color.white);
-                g.fillPolygon(xPoints, yPoints, xPoints.length);
-                g.setColor(Color.BLACK);
-                g.drawPolygon(xPoints, yPoints, xPoints.length);
-            }
+    /**
+     * Vertex of the ring built by toSimple, standing for the edge that goes from it to the next vertex
+     */
+    private static final class RingNode {
+        final Point point;
+        RingNode prev, next;
+
+        RingNode(Point point) {
+            this.point = point;
         }
 
-        try {
-            ImageIO.write(image, "png", outputFile);
-        } catch (IOException e) {
-            e.printStackTrace();
+        double minX() {
+            return Math.min(point.x, next.point.x);
         }
-    }
 
-    private static Point[] parsePointArray(JSONArray jsonArray) {
-        List<Point> points = new ArrayList<>();
-        for (int i = 0; i < jsonArray.length(); i++) {
-            JSONObject jsonPoint = jsonArray.getJSONObject(i);
-            double x = jsonPoint.getDouble("x");
-            double y = jsonPoint.getDouble("y");
-            points.add(new Point(x, y));
+        double minY() {
+            return Math.min(point.y, next.point.y);
         }
-        return points.toArray(new Point[0]);
-    }
 
-    protected List<Edge> getAllEdges() {
-        List<Edge> result = new ArrayList<>();
-        for (int i = 0; i < outerBoundary.length; i++) {
-            result.add(new Edge(outerBoundary[i], outerBoundary[(i+1)%outerBoundary.length]));
+        double maxX() {
+            return Math.max(point.x, next.point.x);
         }
-        for (Point[] hole: holes) {
-            for (int i = 0; i < hole.length; i++) {
-                result.add(new Edge(hole[i], hole[(i+1)%hole.length]));
-            }
+
+        double maxY() {
+            return Math.max(point.y, next.point.y);
         }
-        return result;
     }
 
     /**
      * Convert a polygon with holes to a degenerate simple polygon (that can have duplicate vertices).
-     * For each hole, the method looks for a vertex visible from the boundary of the hole that the hole can be
-     * connected to.
+     * Holes are connected to the boundary from right to left, each through its rightmost vertex: a ray cast to the
+     * right from that vertex first meets the boundary built so far (outer boundary, holes connected before and
+     * their bridges), whose edges are kept in a grid, and from the edge it hits a vertex visible from the hole is
+     * found as in the usual hole elimination procedure.
      */
     public SimplePolygon toSimple() {
+        double minX = Double.POSITIVE_INFINITY, minY = Double.POSITIVE_INFINITY;
+        double maxX = Double.NEGATIVE_INFINITY, maxY = Double.NEGATIVE_INFINITY;
+        for (Point point : outerBoundary) {
+            minX = Math.min(minX, point.x);
+            minY = Math.min(minY, point.y);
+            maxX = Math.max(maxX, point.x);
+            maxY = Math.max(maxY, point.y);
+        }
+        int size = outerBoundary.length;
+        for (Point[] hole : holes) {
+            size += hole.length + 2;
+        }
+        Grid<RingNode> edges = new Grid<>(minX, minY, maxX, maxY, size);
 
-        List<Point> points = new ArrayList<>(Arrays.asList(outerBoundary));
-        List<Edge> edges = getAllEdges();
-        List<Point[]> holes = new ArrayList<>(Arrays.asList(this.holes));
-
-
-        while (holes.size() != 0) {
-            int holeId = 0;
-            while (holeId < holes.size()) {
-                Point[] hole = holes.get(holeId);
-                boolean foundEdge = false;
-                Edge attempt = null;
-                int connectTo = -1;
-                for (int i = 0; i < hole.length; i++) {
-                    for (int j = 0; j < points.size(); j++) {
-                        attempt = new Edge(hole[i], points.get(j));
-                        boolean intersects = false;
-                        for (Edge edge : edges) {
-                            // can intersect at endpoints though
-                            if (attempt.intersect(edge, false) != null) {
-                                intersects = true;
-                                break;
-                            }
-                        }
-                        Point prev = points.get((j - 1 + points.size()) % points.size());
-                        Point next = points.get((j + 1 + points.size()) % points.size());
-
-                        // the second condition is necessary if the vertex has already been used to connect a hole
-                        if ((!intersects) && (computeAngle(prev, points.get(j), next) < computeAngle(prev, points.get(j), hole[i]))){
-                            foundEdge = true;
-                            connectTo = j;
-                            break;
-                        }
-                    }
-                    if (foundEdge) {
-                        for (int k = 0; k < hole.length + 1; k++) {
-                            points.add(connectTo + 1 + k, hole[(i + k) % hole.length]);
-                        }
-                        points.add(connectTo + 1 + hole.length + 1, points.get(connectTo));
-                        edges.add(attempt);
-                        break;
-                    }
-                }
-                if (foundEdge) {
-                    holes.remove(holeId);
-                } else {
-                    holeId++;
+        RingNode start = new RingNode(outerBoundary[0]);
+        start.prev = start.next = start;
+        RingNode last = start;
+        for (int i = 1; i < outerBoundary.length; i++) {
+            last = insertAfter(last, outerBoundary[i]);
+        }
+        RingNode node = start;
+        do {
+            edges.add(node, node.minX(), node.minY(), node.maxX(), node.maxY());
+            node = node.next;
+        } while (node != start);
+
+        Integer[] order = new Integer[holes.length];
+        int[] rightmost = new int[holes.length];
+        for (int h = 0; h < holes.length; h++) {
+            order[h] = h;
+            for (int i = 1; i < holes[h].length; i++) {
+                if (holes[h][i].x > holes[h][rightmost[h]].x) {
+                    rightmost[h] = i;
                 }
             }
         }
+        Arrays.sort(order, (h1, h2) -> Double.compare(holes[h2][rightmost[h2]].x, holes[h1][rightmost[h1]].x));
+
+        for (int h : order) {
+            Point[] hole = holes[h];
+            RingNode bridge = findBridge(hole[rightmost[h]], edges);
+            // bridge, hole starting and ending at its rightmost vertex, bridge back
+            RingNode after = bridge.next;
+            edges.remove(bridge, bridge.minX(), bridge.minY(), bridge.maxX(), bridge.maxY());
+            last = bridge;
+            for (int k = 0; k <= hole.length; k++) {
+                last = insertAfter(last, hole[(rightmost[h] + k) % hole.length]);
+            }
+            insertAfter(last, bridge.point);
+            for (node = bridge; node != after; node = node.next) {
+                edges.add(node, node.minX(), node.minY(), node.maxX(), node.maxY());
+            }
+        }
+
+        List<Point> points = new ArrayList<>(size);
+        node = start;
+        do {
+            points.add(node.point);
+            node = node.next;
+        } while (node != start);
+        return new SimplePolygon(points.toArray(new Point[0]));
+    }
+
+    private static RingNode insertAfter(RingNode node, Point point) {
+        RingNode inserted = new RingNode(point);
+        inserted.prev = node;
+        inserted.next = node.next;
+        node.next.prev = inserted;
+        node.next = inserted;
+        return inserted;
+    }
 
-        Point[] newOuterBoundary = new Point[points.size()];
-        for (int i = 0; i < points.size(); i++) {
-            newOuterBoundary[i] = points.get(i);
+    /**
+     * Find a vertex of the ring visible from the rightmost vertex of a hole. The ray going right from the hole
+     * vertex first hits the ring at some point of an edge; the endpoint of that edge further right is visible
+     * unless other ring vertices lie in the triangle it forms with the hole vertex and the hit point, in which case
+     * the one making the smallest angle with the ray is.
+     */
+    private static RingNode findBridge(Point from, Grid<RingNode> edges) {
+        double[] nearest = {Double.POSITIVE_INFINITY};
+        RingNode[] hit = {null};
+        edges.visit(from.x, from.y, Double.POSITIVE_INFINITY, from.y, node -> {
+            Point p1 = node.point, p2 = node.next.point;
+            if (p1.y != p2.y && Math.min(p1.y, p2.y) <= from.y && from.y <= Math.max(p1.y, p2.y)) {
+                double x = p1.x + (from.y - p1.y) * (p2.x - p1.x) / (p2.y - p1.y);
+                if (x >= from.x && x < nearest[0]) {
+                    nearest[0] = x;
+                    hit[0] = node;
+                }
+            }
+            return true;
+        });
+        if (hit[0] == null) {
+            throw new IllegalArgumentException("Hole at " + from + " is not inside the outer boundary");
         }
-        return new SimplePolygon(newOuterBoundary);
+        Point intersection = new Point(nearest[0], from.y);
+        RingNode candidate = hit[0].point.x >= hit[0].next.point.x ? hit[0] : hit[0].next;
+        Point end = candidate.point;
+
+        // the candidate itself is looked at again below, as it may be a copy on the wrong side of an earlier bridge
+        RingNode[] best = {candidate};
+        double[] smallestTangent = {Double.POSITIVE_INFINITY};
+        edges.visit(from.x, Math.min(from.y, end.y), end.x, Math.max(from.y, end.y), node -> {
+            Point p = node.point;
+            if (p.x > from.x && p.x <= end.x && Predicates.inTriangle(from, intersection, end, p) && isLocallyInside(node, from)) {
+                double tangent = Math.abs(p.y - from.y) / (p.x - from.x);
+                if (tangent < smallestTangent[0] || (tangent == smallestTangent[0] && p.x < best[0].point.x)) {
+                    smallestTangent[0] = tangent;
+                    best[0] = node;
+                }
+            }
+            return true;
+        });
+        return best[0];
     }
 
-    public static double computeAngle(Point p1, Point p2, Point p3) {
-        double dx1 = p1.x - p2.x;
-        double dy1 = p1.y - p2.y;
-        double dx2 = p3.x - p2.x;
-        double dy2 = p3.y - p2.y;
-        double crossProduct = dx1 * dy2 - dx2 * dy1;
-        double dotProduct = dx1 * dx2 + dy1 * dy2;
-        double angle = Math.atan2(crossProduct, dotProduct);
-        if (angle < 0) {
-            angle += 2 * Math.PI;
+    /**
+     * Check if the direction from the ring vertex to the point lies within the interior angle of the ring at that
+     * vertex. This tells apart the copies of a vertex that an earlier bridge starts from.
+     */
+    private static boolean isLocallyInside(RingNode node, Point point) {
+        Point prev = node.prev.point, vertex = node.point, next = node.next.point;
+        if (Predicates.orientation(prev, vertex, next) >= 0) {
+            return Predicates.orientation(vertex, next, point) >= 0 && Predicates.orientation(vertex, point, prev) >= 0;
         }
-        return angle;
+        return Predicates.orientation(vertex, prev, point) <= 0 || Predicates.orientation(vertex, point, next) <= 0;
     }
 
     @Override
@@ -0,0 +1,177 @@
+package geo;
+
+import java.math.BigDecimal;
+
+/**
+ * Exact geometric predicates. Every decision the tool makes about points and segments (which side of a line a
+ * point is on, whether it lies on a segment, whether two segments cross) comes down to the sign of an orientation
+ * determinant, computed here exactly so that degenerate inputs (collinear points, points on edges) are decided
+ * correctly without any epsilon.
+ *
+ * Following Shewchuk's adaptive predicates, the determinant is first evaluated in plain floating point and its
+ * sign is accepted if the result is larger than a bound on its rounding error, which is the case for almost all
+ * calls. Otherwise, if the coordinate differences and products happen to be exact (as they are for the integer
+ * coordinates of the instances), the floating point value was exact after all; only in the remaining cases is the
+ * determinant recomputed with BigDecimal arithmetic.
+ */
+final class Predicates {
+
+    private static final double EPSILON = Math.ulp(1.0) / 2; // 2^-53, the relative rounding error of a double
+    private static final double ORIENTATION_ERROR_BOUND = (3 + 16 * EPSILON) * EPSILON;
+    private static final double SPLITTER = (1 << 27) + 1; // splits a double into two halves of 26 bits
+
+    private Predicates() {
+    }
+
+    /**
+     * Sign of the orientation of the triangle abc: 1 if it turns left (counterclockwise), -1 if it turns right and
+     * 0 if the three points are collinear
+     */
+    static int orientation(double ax, double ay, double bx, double by, double cx, double cy) {
+        double acx = ax - cx, bcx = bx - cx;
+        double acy = ay - cy, bcy = by - cy;
+        double left = acx * bcy;
+        double right = acy * bcx;
+        double det = left - right;
+        double bound = ORIENTATION_ERROR_BOUND * (Math.abs(left) + Math.abs(right));
+        if (det > bound) {
+            return 1;
+        }
+        if (-det > bound) {
+            return -1;
+        }
+        if (differenceTail(ax, cx, acx) == 0 && differenceTail(bx, cx, bcx) == 0 &&
+                differenceTail(ay, cy, acy) == 0 && differenceTail(by, cy, bcy) == 0 &&
+                productTail(acx, bcy, left) == 0 && productTail(acy, bcx, right) == 0) {
+            // both products are exact, so is the sign of their difference (not Double.compare, as -0.0 == 0.0 here)
+            return left > right ? 1 : left < right ? -1 : 0;
+        }
+        BigDecimal exactLeft = exact(ax).subtract(exact(cx)).multiply(exact(by).subtract(exact(cy)));
+        BigDecimal exactRight = exact(ay).subtract(exact(cy)).multiply(exact(bx).subtract(exact(cx)));
+        return exactLeft.compareTo(exactRight);
+    }
+
+    static int orientation(Point a, Point b, Point c) {
+        return orientation(a.x, a.y, b.x, b.y, c.x, c.y);
+    }
+
+    /**
+     * Check if the point lies on the closed segment (x1, y1)--(x2, y2)
+     */
+    static boolean onSegment(double px, double py, double x1, double y1, double x2, double y2) {
+        return px >= Math.min(x1, x2) && px <= Math.max(x1, x2) &&
+               py >= Math.min(y1, y2) && py <= Math.max(y1, y2) &&
+               orientation(x1, y1, x2, y2, px, py) == 0;
+    }
+
+    /**
+     * Check if the segments (x1, y1)--(x2, y2) and (x3, y3)--(x4, y4) intersect. Parallel segments never do (even
+     * if they overlap), and unless intersectOnEndPoints is set, neither do segments that only meet at an endpoint
+     * of either of them: the interiors of the two have to cross.
+     */
+    static boolean intersect(double x1, double y1, double x2, double y2,
+                             double x3, double y3, double x4, double y4, boolean intersectOnEndPoints) {
+        if (Math.max(x1, x2) < Math.min(x3, x4) || Math.max(x3, x4) < Math.min(x1, x2) ||
+                Math.max(y1, y2) < Math.min(y3, y4) || Math.max(y3, y4) < Math.min(y1, y2)) {
+            return false;
+        }
+        int o1 = orientation(x1, y1, x2, y2, x3, y3);
+        int o2 = orientation(x1, y1, x2, y2, x4, y4);
+        if (o1 == 0 && o2 == 0) {
+            return false; // collinear
+        }
+        int o3 = orientation(x3, y3, x4, y4, x1, y1);
+        int o4 = orientation(x3, y3, x4, y4, x2, y2);
+        if (intersectOnEndPoints) {
+            return o1 * o2 <= 0 && o3 * o4 <= 0;
+        }
+        return o1 * o2 < 0 && o3 * o4 < 0;
+    }
+
+    /**
+     * Check if p lies strictly inside the triangle abc, whatever its orientation
+     */
+    static boolean strictlyInTriangle(Point a, Point b, Point c, Point p) {
+        int o1 = orientation(a, b, p), o2 = orientation(b, c, p), o3 = orientation(c, a, p);
+        return o1 == o2 && o2 == o3 && o1 != 0;
+    }
+
+    /**
+     * Check if p lies inside the triangle abc or on its boundary, whatever its orientation
+     */
+    static boolean inTriangle(Point a, Point b, Point c, Point p) {
+        int o1 = orientation(a, b, p), o2 = orientation(b, c, p), o3 = orientation(c, a, p);
+        return (o1 >= 0 && o2 >= 0 && o3 >= 0) || (o1 <= 0 && o2 <= 0 && o3 <= 0);
+    }
+
+    /**
+     * Compare where two lines, (x1, y1)--(x2, y2) and (x3, y3)--(x4, y4), cross the segment (px, py)--(qx, qy), both
+     * of them strictly between its endpoints: -1 if the first one crosses it closer to (px, py), 1 if the second one
+     * does and 0 if they cross it at the same point. The crossing of line i is at parameter ai / (ai - bi) along the
+     * segment, where ai and bi are the orientations of p and q with respect to the line, so this is the sign of
+     * a2 b1 - a1 b2, times the signs of a1 and a2.
+     */
+    static int compareCrossings(double x1, double y1, double x2, double y2, double x3, double y3, double x4, double y4,
+                                double px, double py, double qx, double qy) {
+        double a1 = determinant(x1, y1, x2, y2, px, py), b1 = determinant(x1, y1, x2, y2, qx, qy);
+        double a2 = determinant(x3, y3, x4, y4, px, py), b2 = determinant(x3, y3, x4, y4, qx, qy);
+        double ea1 = determinantError(x1, y1, x2, y2, px, py), eb1 = determinantError(x1, y1, x2, y2, qx, qy);
+        double ea2 = determinantError(x3, y3, x4, y4, px, py), eb2 = determinantError(x3, y3, x4, y4, qx, qy);
+        int signs = (a1 > 0 ? 1 : -1) * (a2 > 0 ? 1 : -1);
+        double left = a2 * b1, right = a1 * b2;
+        double difference = left - right;
+        // the errors of the determinants carried through the products, plus the rounding of the products and of
+        // their difference (with some slack for the rounding of the bound itself)
+        double bound = ((Math.abs(a2) * eb1 + Math.abs(b1) * ea2 + ea2 * eb1 + Math.abs(a1) * eb2 + Math.abs(b2) * ea1 +
+                ea1 * eb2) + 3 * EPSILON * (Math.abs(left) + Math.abs(right))) * (1 + 1e-10);
+        if (Math.abs(difference) > bound && Math.abs(a1) > ea1 && Math.abs(a2) > ea2) {
+            return difference > 0 ? signs : -signs;
+        }
+        BigDecimal exactA1 = exactDeterminant(x1, y1, x2, y2, px, py), exactB1 = exactDeterminant(x1, y1, x2, y2, qx, qy);
+        BigDecimal exactA2 = exactDeterminant(x3, y3, x4, y4, px, py), exactB2 = exactDeterminant(x3, y3, x4, y4, qx, qy);
+        return exactA2.multiply(exactB1).compareTo(exactA1.multiply(exactB2)) * exactA1.signum() * exactA2.signum();
+    }
+
+    /**
+     * The orientation determinant of abc, in floating point
+     */
+    private static double determinant(double ax, double ay, double bx, double by, double cx, double cy) {
+        return (ax - cx) * (by - cy) - (ay - cy) * (bx - cx);
+    }
+
+    /**
+     * Bound on the rounding error of determinant
+     */
+    private static double determinantError(double ax, double ay, double bx, double by, double cx, double cy) {
+        return ORIENTATION_ERROR_BOUND * (Math.abs((ax - cx) * (by - cy)) + Math.abs((ay - cy) * (bx - cx)));
+    }
+
+    private static BigDecimal exactDeterminant(double ax, double ay, double bx, double by, double cx, double cy) {
+        return exact(ax).subtract(exact(cx)).multiply(exact(by).subtract(exact(cy)))
+                .subtract(exact(ay).subtract(exact(cy)).multiply(exact(bx).subtract(exact(cx))));
+    }
+
+    private static BigDecimal exact(double value) {
+        return new BigDecimal(value);
+    }
+
+    /**
+     * Rounding error of the floating point difference a - b = difference (Knuth's two-sum)
+     */
+    private static double differenceTail(double a, double b, double difference) {
+        double bVirtual = a - difference;
+        double aVirtual = difference + bVirtual;
+        return (a - aVirtual) + (bVirtual - b);
+    }
+
+    /**
+     * Rounding error of the floating point product a * b = product (Dekker's two-product)
+     */
+    private static double productTail(double a, double b, double product) {
+        double c = SPLITTER * a;
+        double aHigh = c - (c - a), aLow = a - aHigh;
+        c = SPLITTER * b;
+        double bHigh = c - (c - b), bLow = b - bHigh;
+        return aLow * bLow - (((product - aHigh * bHigh) - aLow * bHigh) - aHigh * bLow);
+    }
+}
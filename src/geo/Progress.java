@@ -0,0 +1,100 @@
+package geo;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.List;
+import java.util.Locale;
+import java.util.function.Supplier;
+
+/**
+ * Keeps track of the reduction of a cover over time: every -progressInterval seconds, the size of the cover is
+ * reported and, with -checkpoint, the cover is saved, so that a run that gets killed can be resumed from there
+ * rather than from the triangulation. The reduction calls update after each merge, which costs a single clock read
+ * unless a report is due. Several threads may call it (-threads, -mergeThreads): the report then is of whichever
+ * cover is being updated when it is due, but a checkpoint is only ever replaced by a smaller cover. The metrics of
+ * the run are saved along with each report.
+ */
+class Progress {
+
+    private final String instance;
+    private final long start; // System.nanoTime() when solving started
+    private final long interval; // nanoseconds between reports, 0 for no reports
+    private final File checkpoint; // null if not checkpointing
+    private final Metrics metrics;
+    private volatile long nextReport;
+    private int checkpointSize = Integer.MAX_VALUE; // size of the cover in the checkpoint
+
+    Progress(String instance, long start, int intervalSeconds, File checkpoint, Metrics metrics) {
+        this.instance = instance;
+        this.start = start;
+        this.interval = intervalSeconds * 1_000_000_000L;
+        this.checkpoint = checkpoint;
+        this.metrics = metrics;
+        this.nextReport = interval > 0 ? start + interval : Long.MAX_VALUE;
+    }
+
+    /**
+     * The metrics the reduction counts its work in
+     */
+    Metrics metrics() {
+        return metrics;
+    }
+
+    /**
+     * The file the checkpoints of the given instance are saved to in the checkpoint directory
+     */
+    static File checkpointFile(String directory, String instanceFile) {
+        return new File(directory, Solution.instanceName(instanceFile) + ".checkpoint.json");
+    }
+
+    /**
+     * The cover now has the given number of pieces; @param pieces gives them if a checkpoint is due
+     */
+    void update(int size, Supplier<List<ConvexPolygon>> pieces) {
+        if (System.nanoTime() < nextReport) {
+            return;
+        }
+        synchronized (this) {
+            long now = System.nanoTime();
+            if (now < nextReport) {
+                return; // another thread just reported
+            }
+            System.out.printf(Locale.ROOT, "%s: cover with %d pieces after %.1f s%n", instance, size, (now - start) / 1e9);
+            if (checkpoint != null && size < checkpointSize) {
+                save(pieces.get());
+            }
+            metrics.save(size);
+            nextReport = now + interval;
+        }
+    }
+
+    /**
+     * Save the final cover to the checkpoint, if checkpointing
+     */
+    synchronized void finish(List<ConvexPolygon> cover) {
+        if (checkpoint != null) {
+            save(cover);
+        }
+    }
+
+    private void save(List<ConvexPolygon> cover) {
+        try {
+            // write the whole checkpoint before replacing the previous one, so that there always is a complete one
+            File directory = checkpoint.getAbsoluteFile().getParentFile();
+            Files.createDirectories(directory.toPath());
+            Path temporary = Files.createTempFile(directory.toPath(), checkpoint.getName(), ".tmp");
+            try {
+                Solution.write(temporary.toFile(), instance, cover);
+                Files.move(temporary, checkpoint.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } finally {
+                Files.deleteIfExists(temporary);
+            }
+            checkpointSize = cover.size();
+        } catch (IOException e) {
+            System.err.println("Could not save the checkpoint " + checkpoint + ": " + e);
+        }
+    }
+}
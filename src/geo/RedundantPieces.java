@@ -0,0 +1,149 @@
+package geo;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Removal of the pieces of a cover that the other pieces make redundant, every point of them being covered by other
+ * pieces already. Merges never shrink a piece, so a hull can swallow the pieces it overlaps, which the reduction
+ * would otherwise only get rid of by merging them into something, if at all.
+ * The cover being valid, it remains valid without a piece as long as the other pieces still leave no part of the
+ * polygon uncovered, that is (see CoverValidator) as long as the outer side of every edge of the other pieces is
+ * still covered, by other pieces or by the outside of the polygon. Only the parts of the edges around the piece
+ * that lie within it may have been covered by it, so only they are walked again, with the exact predicates. Pieces
+ * are found through the grid of the CoverGraph, and the pieces to check are queued: all of them at first, then the
+ * pieces around each new piece.
+ */
+final class RedundantPieces {
+
+    private final CoverGraph graph;
+    private final PolygonWithHoles polygon;
+    private final BitSet queued = new BitSet(); // ids of the pieces to check
+
+    /**
+     * Keep track of the pieces of the graph, all of them queued for a check
+     */
+    RedundantPieces(CoverGraph graph, PolygonWithHoles polygon) {
+        this.graph = graph;
+        this.polygon = polygon;
+        for (int id : graph.ids()) {
+            queued.set(id);
+        }
+    }
+
+    /**
+     * Drop the redundant pieces of a cover (the ones found by going through them from the smallest to the largest)
+     * and return how many were dropped
+     */
+    static int removeFrom(List<ConvexPolygon> cover, PolygonWithHoles polygon) {
+        CoverGraph graph = new CoverGraph(cover);
+        int removed = new RedundantPieces(graph, polygon).remove().size();
+        if (removed > 0) {
+            cover.clear();
+            cover.addAll(graph.pieces());
+        }
+        return removed;
+    }
+
+    /**
+     * Queue the piece with the given id
+     */
+    void queue(int id) {
+        queued.set(id);
+    }
+
+    /**
+     * The piece with the given id is new in the cover (a merged hull, say): queue it and the pieces it overlaps
+     */
+    void changed(int id) {
+        ConvexPolygon piece = graph.get(id);
+        for (int other : graph.around(piece.minX, piece.minY, piece.maxX, piece.maxY, -1)) {
+            queued.set(other);
+        }
+    }
+
+    /**
+     * Check the queued pieces, from the smallest to the largest, remove from the graph those that the other pieces
+     * cover, and return their ids
+     */
+    List<Integer> remove() {
+        return remove(null);
+    }
+
+    /**
+     * Same as remove(), also adding the pieces removed to @param removedPieces unless it is null
+     */
+    List<Integer> remove(List<ConvexPolygon> removedPieces) {
+        List<Integer> candidates = new ArrayList<>(queued.cardinality());
+        for (int id = queued.nextSetBit(0); id >= 0; id = queued.nextSetBit(id + 1)) {
+            if (graph.get(id) != null) {
+                candidates.add(id);
+            }
+        }
+        queued.clear();
+        candidates.sort(Comparator.comparingDouble(id -> graph.get(id).area));
+        List<Integer> removed = new ArrayList<>();
+        for (int id : candidates) {
+            if (graph.size() > 1 && isRedundant(id)) {
+                if (removedPieces != null) {
+                    removedPieces.add(graph.get(id));
+                }
+                graph.remove(id);
+                removed.add(id);
+            }
+        }
+        return removed;
+    }
+
+    private boolean isRedundant(int id) {
+        ConvexPolygon piece = graph.get(id);
+        // cheap necessary condition: a point inside the piece is covered by another piece
+        double x = piece.centroid.x, y = piece.centroid.y;
+        if (piece.strictlyContains(x, y)) {
+            boolean covered = false;
+            for (int other : graph.around(x, y, x, y, id)) {
+                if (graph.get(other).contains(x, y)) {
+                    covered = true;
+                    break;
+                }
+            }
+            if (!covered) {
+                return false;
+            }
+        }
+        // the outer side of the edges of the pieces around has to be covered without it, where it covered them:
+        // only the pieces around it can do that
+        List<Integer> around = graph.around(piece.minX, piece.minY, piece.maxX, piece.maxY, id);
+        List<double[]> edges = new ArrayList<>();
+        polygon.edgeIndex().visit(piece.minX, piece.minY, piece.maxX, piece.maxY, (x1, y1, x2, y2) -> {
+            edges.add(new double[]{x1, y1, x2, y2});
+            return true;
+        });
+        List<ConvexPolygon> neighbours = new ArrayList<>(around.size());
+        for (int other : around) {
+            double[] vertices = graph.get(other).coordinates;
+            int n = vertices.length / 2;
+            for (int k = 0; k < n; k++) {
+                int l = (k + 1) % n;
+                double px = vertices[2*k], py = vertices[2*k+1], qx = vertices[2*l], qy = vertices[2*l+1];
+                double minX = Math.min(px, qx), minY = Math.min(py, qy), maxX = Math.max(px, qx), maxY = Math.max(py, qy);
+                if (maxX < piece.minX || minX > piece.maxX || maxY < piece.minY || minY > piece.maxY) {
+                    continue;
+                }
+                neighbours.clear();
+                for (int neighbour : around) {
+                    ConvexPolygon candidate = graph.get(neighbour);
+                    if (neighbour != other && candidate.maxX >= minX && candidate.minX <= maxX && candidate.maxY >= minY && candidate.minY <= maxY) {
+                        neighbours.add(candidate);
+                    }
+                }
+                if (!CoverValidator.outerSideCovered(px, py, qx, qy, edges, neighbours, piece)) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,116 @@
+package geo;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Draws images on a background thread, so that saving them does not slow down the solver. Each request carries its
+ * own snapshot of the polygons to draw (polygons never change, so a copy of the list is enough), which the solver is
+ * free to move on from. At most QUEUE_CAPACITY images wait to be drawn: beyond that, the solver waits for the
+ * renderer instead of piling up snapshots in memory. The bands of each PNG are drawn by a pool of threads, one per
+ * processor (see Drawing).
+ */
+class Renderer implements AutoCloseable {
+
+    private static final int QUEUE_CAPACITY = 64;
+    private static final Runnable STOP = () -> { };
+
+    private final int width, height;
+    private final String format;
+    private final Metrics metrics;
+    private final BlockingQueue<Runnable> queue = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+    private final Thread thread;
+    private final int threads = Runtime.getRuntime().availableProcessors();
+    private final ExecutorService bands = Executors.newFixedThreadPool(threads, task -> {
+        Thread band = new Thread(task, "renderer-band");
+        band.setDaemon(true);
+        return band;
+    });
+
+    /**
+     * A renderer saving images of the given size in the given @param format ("png", "svg" or "both"), and counting
+     * the time spent drawing them in @param metrics
+     */
+    Renderer(int width, int height, String format, Metrics metrics) {
+        this.width = width;
+        this.height = height;
+        this.format = format;
+        this.metrics = metrics;
+        this.thread = new Thread(this::drawAll, "renderer");
+        this.thread.setDaemon(true);
+        this.thread.start();
+    }
+
+    /**
+     * Queue an image of the polygons, to be saved to the file with the given @param name and the extension of the
+     * format (or of each of them)
+     */
+    void draw(List<PolygonWithHoles> polygons, String name, boolean monochrome, String description) {
+        enqueue(() -> {
+            long start = System.nanoTime();
+            Drawing drawing = new Drawing(polygons, width, height, monochrome);
+            try {
+                if (!format.equals("svg")) {
+                    File file = new File(name + ".png");
+                    drawing.writePng(file, bands, threads);
+                    System.out.println("Saved the image of " + description + " to " + file);
+                }
+                if (!format.equals("png")) {
+                    File file = new File(name + ".svg");
+                    drawing.writeSvg(file);
+                    System.out.println("Saved the image of " + description + " to " + file);
+                }
+            } catch (IOException e) {
+                System.err.println("Could not save the image of " + description + ": " + e);
+            }
+            metrics.time(Metrics.RENDER, start);
+        });
+    }
+
+    /**
+     * Wait until all the queued images are saved
+     */
+    @Override
+    public void close() {
+        enqueue(STOP);
+        try {
+            thread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        bands.shutdown();
+    }
+
+    private void enqueue(Runnable task) {
+        try {
+            queue.put(task);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while queueing an image", e);
+        }
+    }
+
+    private void drawAll() {
+        while (true) {
+            Runnable task;
+            try {
+                task = queue.take();
+            } catch (InterruptedException e) {
+                return;
+            }
+            if (task == STOP) {
+                return;
+            }
+            try {
+                task.run();
+            } catch (RuntimeException e) {
+                System.err.println("Could not save an image: " + e);
+            }
+        }
+    }
+}
@@ -6,85 +6,131 @@ import java.util.List;
 
 public class SimplePolygon extends PolygonWithHoles {
 
+    private static final Point[][] NO_HOLES = new Point[0][];
+
+    final double[] coordinates; // the boundary packed as x0, y0, x1, y1, ... for the predicates in Geometry
+
     public SimplePolygon(Point[] outerBoundary) {
-        super(outerBoundary, new Point[0][]);
+        super(outerBoundary, NO_HOLES);
+        coordinates = Geometry.pack(outerBoundary);
+    }
+
+    /**
+     * Vertex of the ring being clipped, linked to its current neighbours
+     */
+    private static final class Vertex {
+        final Point point;
+        final int index; // position in the original boundary
+        Vertex prev, next;
+
+        Vertex(Point point, int index) {
+            this.point = point;
+            this.index = index;
+        }
     }
 
     /**
-     * Ear-clipping triangulation
+     * Ear-clipping triangulation. The remaining vertices form a doubly linked ring that is swept round and round,
+     * clipping every ear met on the way; the vertices that could invalidate an ear are looked up in a grid, and the
+     * edges of the polygon the ear could cross in its edge index. The bridges to the holes can leave zero-width spikes
+     * in the ring (where a bridge runs along the edge of a hole) that no ear can be clipped next to: after a whole lap
+     * without an ear, such spikes are dropped (they cover no area), and if another lap still finds none, the
+     * triangulation fails with an IllegalStateException rather than going round forever.
      */
     public List<Triangle> triangulate(int limit) throws ConvexPolygon.NotConvexException {
         List<Triangle> triangles = new ArrayList<>();
-        List<Edge> edges = getAllEdges();
-        List<Point> points = new ArrayList<>();
-        points.addAll(Arrays.asList(outerBoundary));
-        while (points.size() > 3) {
-            int i = 0;
-            while (i < points.size() && points.size() > 3) {
-                Point prev = points.get((i - 1 + points.size()) % points.size());
-                Point next = points.get((i + 1) % points.size());
-                if (new Edge(prev, next).contains(points.get(i))) {
-                    points.remove(i);
-                    continue;
+        EdgeIndex edges = edgeIndex();
+        int n = outerBoundary.length;
+        double minX = Double.POSITIVE_INFINITY, minY = Double.POSITIVE_INFINITY;
+        double maxX = Double.NEGATIVE_INFINITY, maxY = Double.NEGATIVE_INFINITY;
+        for (Point point : outerBoundary) {
+            minX = Math.min(minX, point.x);
+            minY = Math.min(minY, point.y);
+            maxX = Math.max(maxX, point.x);
+            maxY = Math.max(maxY, point.y);
+        }
+        Grid<Vertex> grid = new Grid<>(minX, minY, maxX, maxY, n);
+        Vertex[] ring = new Vertex[n];
+        for (int i = 0; i < n; i++) {
+            ring[i] = new Vertex(outerBoundary[i], i);
+            grid.add(ring[i], ring[i].point.x, ring[i].point.y, ring[i].point.x, ring[i].point.y);
+        }
+        for (int i = 0; i < n; i++) {
+            ring[i].prev = ring[(i - 1 + n) % n];
+            ring[i].next = ring[(i + 1) % n];
+        }
+
+        int size = n;
+        Vertex current = ring[0];
+        Vertex lap = current; // where the sweep last made progress
+        boolean stuck = false; // a whole lap made no progress
+        while (size > 3) {
+            Vertex prev = current.prev;
+            Vertex next = current.next;
+            if (Predicates.onSegment(current.point.x, current.point.y, prev.point.x, prev.point.y, next.point.x, next.point.y) ||
+                    stuck && Predicates.orientation(prev.point, current.point, next.point) == 0) {
+                remove(current, grid);
+                size--;
+                lap = next;
+                stuck = false;
+            } else if (isEar(current, grid, edges)) {
+                // the check below is necessary due to degeneracies introduced by conversion to a simple polygon
+                if (ConvexPolygon.isConvex(new Point[]{prev.point, current.point, next.point})) {
+                    triangles.add(new Triangle(prev.point, current.point, next.point));
                 }
-                if (isEar(i, points, edges)) {
-                    // the check below is necessary due to degeneracies introduced by conversion to a simple polygon
-                    if (ConvexPolygon.isConvex(new Point[]{prev, points.get(i), next})) {
-                        triangles.add(new Triangle(prev, points.get(i), next));
-                    }
-                    points.remove(i);
-                    limit--;
-                    if (limit <= 0) {
-                        return triangles;
-                    }
-                } else {
-                    i++;
+                remove(current, grid);
+                size--;
+                lap = next;
+                stuck = false;
+                limit--;
+                if (limit <= 0) {
+                    return triangles;
                 }
+            } else if (next == lap) {
+                if (stuck) {
+                    throw new IllegalStateException("Ear clipping found no ear among the " + size +
+                            " vertices left (try -triangulator cdt)");
+                }
+                stuck = true;
             }
+            current = next;
         }
+        // the last three vertices, in their original order
+        Vertex[] last = new Vertex[]{current, current.next, current.next.next};
+        Arrays.sort(last, (v1, v2) -> Integer.compare(v1.index, v2.index));
         // the check below is necessary due to degeneracies introduced by conversion to a simple polygon
-        if (ConvexPolygon.isConvex(new Point[]{points.get(0), points.get(1), points.get(2)})) {
-            triangles.add(new Triangle(points.get(0), points.get(1), points.get(2)));
+        if (ConvexPolygon.isConvex(new Point[]{last[0].point, last[1].point, last[2].point})) {
+            triangles.add(new Triangle(last[0].point, last[1].point, last[2].point));
         }
         return triangles;
     }
 
+    private static void remove(Vertex vertex, Grid<Vertex> grid) {
+        vertex.prev.next = vertex.next;
+        vertex.next.prev = vertex.prev;
+        grid.remove(vertex, vertex.point.x, vertex.point.y, vertex.point.x, vertex.point.y);
+    }
+
     /**
-     * Determine if a given triangle is an ear of the polygon
+     * Determine if a given triangle is an ear of the polygon: it has to be convex, no other remaining vertex may
+     * lie inside of it, and none of the polygon edges may cross it.
      */
-    private static boolean isEar(int i, List<Point> points, List<Edge> edges) {
-        Point prev = points.get((i - 1 + points.size()) % points.size());
-        Point next = points.get((i + 1) % points.size());
-        Point mid = points.get(i);
-        if (crossProduct(prev, mid, next) <= 0) {
+    private static boolean isEar(Vertex vertex, Grid<Vertex> grid, EdgeIndex edges) {
+        Point prev = vertex.prev.point;
+        Point mid = vertex.point;
+        Point next = vertex.next.point;
+        if (Predicates.orientation(prev, mid, next) <= 0) {
             return false;
         }
-        int j = (i + 2) % points.size() ;
-        while (j != (i - 1 + points.size()) % points.size()) {
-            if (isInsideTriangle(prev, mid, next, points.get(j))) {
-                return false;
-            }
-            j = (j + 1) % points.size();
-        }
-        Edge[] triangle = new Edge[] {new Edge(prev, mid), new Edge(mid, next), new Edge(next, prev)};
-        for (Edge edge: edges) {
-            for (Edge triangleEdge: triangle) {
-                if (edge.intersect(triangleEdge, false) != null) {
-                    return false;
-                }
-            }
+        double minX = Math.min(prev.x, Math.min(mid.x, next.x)), maxX = Math.max(prev.x, Math.max(mid.x, next.x));
+        double minY = Math.min(prev.y, Math.min(mid.y, next.y)), maxY = Math.max(prev.y, Math.max(mid.y, next.y));
+        boolean empty = grid.visit(minX, minY, maxX, maxY, other ->
+                other == vertex || other == vertex.prev || other == vertex.next ||
+                !Predicates.strictlyInTriangle(prev, mid, next, other.point));
+        if (!empty) {
+            return false;
         }
-        return true;
-    }
-
-    private static double crossProduct(Point a, Point b, Point c) {
-        return (b.x - a.x) * (c.y - a.y) - (b.y - a.y) * (c.x - a.x);
-    }
-
-    private static boolean isInsideTriangle(Point a, Point b, Point c, Point p) {
-        double s1 = crossProduct(a, b, p);
-        double s2 = crossProduct(b, c, p);
-        double s3 = crossProduct(c, a, p);
-        return s1 > 0 && s2 > 0 && s3 > 0 || s1 < 0 && s2 < 0 && s3 < 0;
+        return !edges.crosses(prev.x, prev.y, mid.x, mid.y) && !edges.crosses(mid.x, mid.y, next.x, next.y) &&
+               !edges.crosses(next.x, next.y, prev.x, prev.y);
     }
 }
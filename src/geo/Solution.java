@@ -0,0 +1,124 @@
+package geo;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Writer;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.math.MathContext;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.json.JSONWriter;
+
+/**
+ * Writes (and reads back) a cover in the CG:SHOP 2023 solution format: the name of the instance and the list of pieces, each a list of
+ * vertices. Coordinates are written as integers when they are (as the vertices of the pieces come from the instance,
+ * they always are so far), and as exact fractions "numerator/denominator" otherwise.
+ */
+final class Solution {
+
+    private static final String INSTANCE_SUFFIX = ".instance.json";
+    private static final String SOLUTION_SUFFIX = ".solution.json";
+
+    private Solution() {
+    }
+
+    /**
+     * The name of the instance, which CG:SHOP instance files are named after
+     */
+    static String instanceName(String instanceFile) {
+        String name = new File(instanceFile).getName();
+        if (name.endsWith(".gz")) {
+            name = name.substring(0, name.length() - ".gz".length());
+        }
+        if (name.endsWith(INSTANCE_SUFFIX)) {
+            return name.substring(0, name.length() - INSTANCE_SUFFIX.length());
+        }
+        return name.endsWith(".json") ? name.substring(0, name.length() - ".json".length()) : name;
+    }
+
+    /**
+     * The file the solution of the given instance file is saved to: name.solution.json next to it
+     */
+    static File solutionFile(String instanceFile) {
+        File parent = new File(instanceFile).getParentFile();
+        return new File(parent, instanceName(instanceFile) + SOLUTION_SUFFIX);
+    }
+
+    static void write(File file, String instance, List<? extends PolygonWithHoles> cover) throws IOException {
+        try (Writer writer = Files.newBufferedWriter(file.toPath(), StandardCharsets.UTF_8)) {
+            JSONWriter json = new JSONWriter(writer);
+            json.object()
+                    .key("type").value("CGSHOP2023_Solution")
+                    .key("instance").value(instance)
+                    .key("polygons").array();
+            for (PolygonWithHoles piece : cover) {
+                json.array();
+                for (Point point : piece.outerBoundary) {
+                    json.object();
+                    coordinate(json.key("x"), point.x);
+                    coordinate(json.key("y"), point.y);
+                    json.endObject();
+                }
+                json.endArray();
+            }
+            json.endArray().endObject();
+        }
+    }
+
+    /**
+     * Read back the pieces of a solution of the given instance (written by write) as they are in the file, whether
+     * they are convex or not
+     */
+    static List<Point[]> readRings(File file, String instance) throws IOException {
+        try {
+            JSONObject json = new JSONObject(new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8));
+            if (!instance.equals(json.optString("instance"))) {
+                throw new IOException(file + " is not a solution of " + instance);
+            }
+            JSONArray polygons = json.getJSONArray("polygons");
+            List<Point[]> cover = new ArrayList<>(polygons.length());
+            for (int i = 0; i < polygons.length(); i++) {
+                JSONArray jsonPoints = polygons.getJSONArray(i);
+                Point[] points = new Point[jsonPoints.length()];
+                for (int j = 0; j < points.length; j++) {
+                    JSONObject jsonPoint = jsonPoints.getJSONObject(j);
+                    points[j] = new Point(coordinate(jsonPoint.get("x")), coordinate(jsonPoint.get("y")));
+                }
+                cover.add(points);
+            }
+            return cover;
+        } catch (JSONException | NumberFormatException | ArithmeticException e) {
+            throw new IOException("Malformed solution file " + file + ": " + e.getMessage());
+        }
+    }
+
+    private static void coordinate(JSONWriter json, double value) {
+        if (value == Math.rint(value) && Math.abs(value) < 0x1p63) {
+            json.value((long) value);
+            return;
+        }
+        // every (finite) double is a fraction with a power of two as denominator
+        BigDecimal exact = new BigDecimal(value);
+        BigInteger numerator = exact.unscaledValue(), denominator = BigInteger.TEN.pow(exact.scale());
+        BigInteger gcd = numerator.gcd(denominator);
+        json.value(numerator.divide(gcd) + "/" + denominator.divide(gcd));
+    }
+
+    private static double coordinate(Object value) {
+        if (value instanceof Number) {
+            return ((Number) value).doubleValue();
+        }
+        String[] fraction = value.toString().split("/");
+        BigDecimal numerator = new BigDecimal(fraction[0].trim());
+        if (fraction.length == 1) {
+            return numerator.doubleValue();
+        }
+        return numerator.divide(new BigDecimal(fraction[1].trim()), MathContext.DECIMAL128).doubleValue();
+    }
+}